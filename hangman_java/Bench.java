@@ -0,0 +1,241 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Micro benchmarks of the stages of a game, each measured on its own so a regression
+ * in one stage can't hide behind the others:
+ *   construct  making MyGuessingStrategy over the dictionary
+ *   refine     making the WordSet of a pattern with 1, 2 and 3 letters revealed
+ *   nextGuess  giving a guess for a game in progress, whose WordSet is cached
+ *   game       playing a whole game with HangmanGame::run
+ * Every benchmark runs warm-up iterations first, then measured iterations of a fixed
+ * time each, and reports the mean time per operation with its standard deviation.
+ * Operations are timed in batches long enough for the clock's own cost not to count.
+ *
+ * Options are given as name=value arguments:
+ *   bench       comma separated benchmarks to run (default all)
+ *   lengths     comma separated word lengths (default 4,8,12)
+ *   guesses     comma separated maximum wrong guesses for the game benchmark (default 1,5,8)
+ *   warmups     warm-up iterations (default 3)
+ *   iterations  measured iterations (default 5)
+ *   time        milliseconds of an iteration (default 1000)
+ */
+class Bench {
+  /**
+   * An operation to measure. It returns something computed, so the work can't be optimized away.
+   */
+  private interface Op {
+    long run(int i);
+  }
+
+  /**
+   * Sum of the values returned by operations, read at the end so the JIT keeps the work
+   */
+  private static long sink = 0;
+
+  private static int warmups = 3;
+  private static int iterations = 5;
+  private static long time = 1000;
+
+  /**
+   * Nanoseconds a batch of operations is grown to take at least
+   */
+  private static final long BATCH_NANOS = 100000;
+
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_dict");
+    if (file == null)
+      file = "words.txt";
+
+    String benches = "construct,refine,nextGuess,game";
+    int[] lengths = {4, 8, 12};
+    int[] guesses = {1, 5, 8};
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      String name = eq < 0 ? arg : arg.substring(0, eq);
+      String value = eq < 0 ? "" : arg.substring(eq + 1);
+      try {
+        if (name.equals("bench"))
+          benches = value;
+        else if (name.equals("lengths"))
+          lengths = parseInts(value);
+        else if (name.equals("guesses"))
+          guesses = parseInts(value);
+        else if (name.equals("warmups"))
+          warmups = Integer.parseInt(value);
+        else if (name.equals("iterations"))
+          iterations = Integer.parseInt(value);
+        else if (name.equals("time"))
+          time = Long.parseLong(value);
+        else
+          throw new IllegalArgumentException();
+      }
+      catch (IllegalArgumentException e) {
+        System.err.println(String.format("Bad option '%s'!", arg));
+        System.exit(-1);
+      }
+    }
+    List<String> selected = new ArrayList<String>();
+    Collections.addAll(selected, benches.split(","));
+
+    final Set<String> dict = Main.readDictionary(file);
+    final MyGuessingStrategy strategy = new MyGuessingStrategy(dict, 0);
+
+    if (selected.contains("construct")) {
+      measure("construct", new Op() {
+        public long run(int i) {
+          return new MyGuessingStrategy(dict, 0).indexes().size();
+        }
+      });
+    }
+
+    for (int length : lengths) {
+      final List<String> words = sample(dict, length, 256);
+      if (words.isEmpty()) {
+        System.err.println(String.format("No word of length %d!", length));
+        continue;
+      }
+
+      if (selected.contains("refine")) {
+        for (int depth = 1; depth <= 3; depth++) {
+          final List<String> patterns = new ArrayList<String>();
+          for (String word : words) {
+            String pattern = reveal(word, depth);
+            if (pattern != null)
+              patterns.add(pattern);
+          }
+          if (patterns.isEmpty())
+            continue;
+          measure(String.format("refine length=%d depth=%d", length, depth), new Op() {
+            public long run(int i) {
+              return strategy.refine(patterns.get(i % patterns.size()));
+            }
+          });
+        }
+      }
+
+      if (selected.contains("nextGuess")) {
+        //Games two guesses in, which is where most guesses are made on cached WordSets
+        final List<HangmanGame> games = new ArrayList<HangmanGame>();
+        final GuessResult guess = new GuessResult();
+        for (String word : words) {
+          HangmanGame game = new HangmanGame(word, 5);
+          for (int n = 0; n < 2 && game.gameStatus() == HangmanGame.Status.KEEP_GUESSING; n++) {
+            strategy.nextGuess(game, guess);
+            guess.makeGuess(game);
+          }
+          if (game.gameStatus() == HangmanGame.Status.KEEP_GUESSING)
+            games.add(game);
+        }
+        if (!games.isEmpty()) {
+          measure(String.format("nextGuess length=%d", length), new Op() {
+            public long run(int i) {
+              strategy.nextGuess(games.get(i % games.size()), guess);
+              return guess.getLetter();
+            }
+          });
+        }
+      }
+
+      if (selected.contains("game")) {
+        final GuessResult guess = new GuessResult();
+        for (final int maxWrong : guesses) {
+          measure(String.format("game length=%d guesses=%d", length, maxWrong), new Op() {
+            public long run(int i) {
+              return new HangmanGame(words.get(i % words.size()), maxWrong).run(strategy, false, guess);
+            }
+          });
+        }
+      }
+    }
+
+    if (sink == 42)
+      System.err.println();
+  }
+
+  /**
+   * Run an operation over warm-up and measured iterations and print its time per operation.
+   * The clock is read once a batch, whose size is doubled while a batch takes less than
+   * BATCH_NANOS, so quick operations are timed by the thousands.
+   */
+  private static void measure(String name, Op op) {
+    double[] results = new double[iterations];
+    int batch = 1;
+    for (int n = -warmups; n < iterations; n++) {
+      long ops = 0;
+      long start = System.nanoTime();
+      long end = start + time * 1000000;
+      long now = start;
+      do {
+        long last = now;
+        for (int k = 0; k < batch; k++) {
+          sink += op.run((int)ops);
+          ops++;
+        }
+        now = System.nanoTime();
+        if (now - last < BATCH_NANOS && batch < 1 << 30)
+          batch <<= 1;
+      } while (now < end);
+      if (n >= 0)
+        results[n] = (double)(now - start) / ops;
+    }
+
+    double mean = 0;
+    for (double r : results)
+      mean += r;
+    mean /= results.length;
+    double variance = 0;
+    for (double r : results)
+      variance += (r - mean) * (r - mean);
+    double sd = results.length > 1 ? Math.sqrt(variance / (results.length - 1)) : 0;
+    System.out.println(String.format("%-36s %14.1f ns/op  +- %.1f", name, mean, sd));
+  }
+
+  /**
+   * @return Up to count words of the length, evenly spread over the sorted dictionary
+   */
+  private static List<String> sample(Set<String> dict, int length, int count) {
+    List<String> all = new ArrayList<String>();
+    for (String word : dict) {
+      if (word.length() == length)
+        all.add(word);
+    }
+    Collections.sort(all);
+
+    List<String> words = new ArrayList<String>();
+    for (int i = 0; i < count && i < all.size(); i++)
+      words.add(all.get((int)((long)i * all.size() / Math.min(count, all.size()))));
+    return words;
+  }
+
+  /**
+   * @return The pattern of a word with its first depth different letters revealed, or null
+   * if it would have no blanks left.
+   */
+  private static String reveal(String word, int depth) {
+    StringBuilder revealed = new StringBuilder();
+    for (int i = 0; i < word.length() && revealed.length() < depth; i++) {
+      if (revealed.indexOf(word.substring(i, i + 1)) == -1)
+        revealed.append(word.charAt(i));
+    }
+
+    char[] pattern = new char[word.length()];
+    boolean blank = false;
+    for (int i = 0; i < word.length(); i++) {
+      boolean known = revealed.indexOf(word.substring(i, i + 1)) != -1;
+      pattern[i] = known ? word.charAt(i) : HangmanGame.MYSTERY_LETTER;
+      blank |= !known;
+    }
+    return blank ? new String(pattern) : null;
+  }
+
+  private static int[] parseInts(String value) {
+    String[] parts = value.split(",");
+    int[] ints = new int[parts.length];
+    for (int i = 0; i < parts.length; i++)
+      ints[i] = Integer.parseInt(parts[i].trim());
+    return ints;
+  }
+}
@@ -0,0 +1,417 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache whose values are loaded on demand and whose total weight is bounded.
+ * Each value is loaded only once even if many threads ask for it at the same time, and
+ * the loading doesn't block threads asking for other keys.
+ * When the total weight goes beyond the limit, entries are evicted in CLOCK order (an
+ * approximation of LRU): entries are visited in the order they were added and an entry
+ * used since the last visit gets a second chance instead of being evicted.
+ */
+abstract class BoundedCache<K, V> {
+  /**
+   * A loaded value and its weight, which is weighed before the value is published.
+   */
+  private static class Weighed<V> {
+    final V value;
+    final int weight;
+
+    Weighed(V value, int weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private static class Entry<K, V> {
+    final K key;
+    final FutureTask<Weighed<V>> value;
+    volatile boolean referenced = false;
+
+    /**
+     * Whether the weight is counted in the total, whether the entry is no longer mapped, and
+     * whether it's in the clock. The weight is counted and the entry put in the clock once
+     * the value is loaded, unless the entry is removed before. Guarded by the entry.
+     */
+    boolean counted = false;
+    boolean removed = false;
+    boolean inClock = false;
+
+    Entry(K key, FutureTask<Weighed<V>> value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<K, Entry<K, V>>();
+
+  /**
+   * Loaded entries in the order to visit for eviction.
+   */
+  private final ConcurrentLinkedQueue<Entry<K, V>> clock = new ConcurrentLinkedQueue<Entry<K, V>>();
+
+  /**
+   * The number of entries in the clock, as counting the queue walks it all, and the number
+   * of them removed from the map, which are swept out once they're half of the clock
+   */
+  private final AtomicInteger clockSize = new AtomicInteger();
+  private final AtomicInteger dead = new AtomicInteger();
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final long maxWeight;
+  private final AtomicLong weight = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Loads the values by load, for get without a loader
+   */
+  private final Function<K, V> loader = new Function<K, V>() {
+    public V apply(K key) {
+      return load(key);
+    }
+  };
+
+  /**
+   * @param maxWeight The maximum total weight of the cached values. Zero or negative means no limit.
+   */
+  public BoundedCache(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Load the value of a key which is not in the cache.
+   */
+  protected abstract V load(K key);
+
+  /**
+   * @return The weight of a value, which must be not negative.
+   */
+  protected abstract int weigh(V value);
+
+  /**
+   * @return The value of the key, which is loaded if not in the cache yet.
+   */
+  public V get(K key) {
+    return get(key, this.loader);
+  }
+
+  /**
+   * @param loader Loads the value if the key is not in the cache yet, in place of load. It
+   * must give the same value load would, only maybe faster, e.g. from something the caller
+   * has at hand, since the value is cached for all.
+   * @return The value of the key, which is loaded if not in the cache yet.
+   */
+  public V get(final K key, final Function<? super K, ? extends V> loader) {
+    Entry<K, V> entry = this.map.get(key);
+    if (entry != null) {
+      this.hits.increment();
+      return valueOf(entry);
+    }
+
+    FutureTask<Weighed<V>> task = new FutureTask<Weighed<V>>(new Callable<Weighed<V>>() {
+      public Weighed<V> call() {
+        V value = loader.apply(key);
+        return new Weighed<V>(value, weigh(value));
+      }
+    });
+    Entry<K, V> created = new Entry<K, V>(key, task);
+    entry = this.map.putIfAbsent(key, created);
+    if (entry != null) { //Someone else is loading or has loaded it.
+      this.hits.increment();
+      return valueOf(entry);
+    }
+
+    this.misses.increment();
+    task.run();
+    V value;
+    try {
+      value = valueOf(created);
+    }
+    catch (RuntimeException e) {
+      this.map.remove(key, created);
+      throw e;
+    }
+    add(created);
+    return value;
+  }
+
+  /**
+   * Put a value already known into the cache, unless the key is in the cache already.
+   * It's neither a hit nor a miss.
+   */
+  public void put(K key, V value) {
+    Entry<K, V> created = loaded(key, value);
+    if (this.map.putIfAbsent(key, created) != null)
+      return;
+    add(created);
+  }
+
+  /**
+   * Remove a key if it's loaded to a value, e.g. one found out of date.
+   * @return true if it's removed
+   */
+  public boolean remove(K key, V value) {
+    Entry<K, V> entry = this.map.get(key);
+    if (entry == null || !entry.value.isDone() || valueOf(entry) != value || !this.map.remove(key, entry))
+      return false;
+    removed(entry);
+    if (this.dead.get() * 2 > this.clockSize.get())
+      sweep();
+    return true;
+  }
+
+  /**
+   * Replace each loaded value by what a function makes of it, or remove it if the function
+   * gives null, e.g. when what the values are made of has changed. Values being loaded are
+   * left alone, so they must be checked by whoever gets them. It's neither a hit nor a miss.
+   */
+  public void replaceAll(BiFunction<K, V, V> function) {
+    for (Entry<K, V> entry : this.map.values()) {
+      if (!entry.value.isDone())
+        continue;
+      V value = valueOf(entry);
+      V replaced = function.apply(entry.key, value);
+      if (replaced == value)
+        continue;
+      if (replaced == null) {
+        if (this.map.remove(entry.key, entry))
+          removed(entry);
+        continue;
+      }
+      Entry<K, V> created = loaded(entry.key, replaced);
+      created.referenced = entry.referenced;
+      if (this.map.replace(entry.key, entry, created)) {
+        removed(entry);
+        add(created);
+      }
+    }
+    sweep();
+    if (this.maxWeight > 0 && this.weight.get() > this.maxWeight)
+      evict();
+  }
+
+  /**
+   * @return An entry of a value already known
+   */
+  private Entry<K, V> loaded(K key, V value) {
+    final Weighed<V> weighed = new Weighed<V>(value, weigh(value));
+    FutureTask<Weighed<V>> task = new FutureTask<Weighed<V>>(new Callable<Weighed<V>>() {
+      public Weighed<V> call() {
+        return weighed;
+      }
+    });
+    task.run();
+    return new Entry<K, V>(key, task);
+  }
+
+  /**
+   * Count the weight of an entry just loaded and put it in the clock, unless it's been
+   * removed in the meantime, then evict if the total is beyond the limit.
+   */
+  private void add(Entry<K, V> entry) {
+    int weight = weighed(entry).weight;
+    synchronized (entry) {
+      if (entry.removed)
+        return;
+      entry.counted = true;
+      entry.inClock = true;
+    }
+    this.clock.add(entry);
+    this.clockSize.incrementAndGet();
+    long total = this.weight.addAndGet(weight);
+    if (this.maxWeight > 0 && total > this.maxWeight)
+      evict();
+  }
+
+  /**
+   * Take the weight of an entry just removed from the map out of the total, if it's been
+   * counted; otherwise it won't be. If it's in the clock, it's dead there until swept out.
+   */
+  private void removed(Entry<K, V> entry) {
+    synchronized (entry) {
+      entry.removed = true;
+      if (entry.inClock)
+        this.dead.incrementAndGet();
+      if (!entry.counted)
+        return;
+    }
+    this.weight.addAndGet(-weighed(entry).weight);
+  }
+
+  /**
+   * Account for an entry taken out of the clock.
+   */
+  private void unlinked(Entry<K, V> entry) {
+    synchronized (entry) {
+      entry.inClock = false;
+      if (entry.removed)
+        this.dead.decrementAndGet();
+    }
+    this.clockSize.decrementAndGet();
+  }
+
+  /**
+   * Take the entries removed from the map out of the clock, since without a limit it's
+   * never visited. Skipped if the clock is being visited, which drops them as it goes.
+   */
+  private void sweep() {
+    if (!this.evictionLock.tryLock())
+      return;
+    try {
+      Iterator<Entry<K, V>> it = this.clock.iterator();
+      while (it.hasNext()) {
+        Entry<K, V> entry = it.next();
+        boolean removed;
+        synchronized (entry) {
+          removed = entry.removed;
+        }
+        if (removed) {
+          it.remove();
+          unlinked(entry);
+        }
+      }
+    }
+    finally {
+      this.evictionLock.unlock();
+    }
+  }
+
+  /**
+   * @return The loaded entries at the moment, in the order they were added. Taking them
+   * doesn't count as using them for eviction.
+   */
+  public Map<K, V> snapshot() {
+    Map<K, V> entries = new LinkedHashMap<K, V>();
+    for (Entry<K, V> entry : this.clock) {
+      if (this.map.get(entry.key) != entry)
+        continue;
+      try {
+        entries.put(entry.key, entry.value.get().value); //Loaded already, so it doesn't block
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      catch (ExecutionException e) {
+        continue;
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * @return The value of the key if it's in the cache and loaded, otherwise null.
+   * Only a found value is counted as a hit.
+   */
+  public V getIfPresent(K key) {
+    Entry<K, V> entry = this.map.get(key);
+    if (entry == null || !entry.value.isDone())
+      return null;
+    this.hits.increment();
+    return valueOf(entry);
+  }
+
+  private V valueOf(Entry<K, V> entry) {
+    if (!entry.referenced)
+      entry.referenced = true;
+    return weighed(entry).value;
+  }
+
+  private Weighed<V> weighed(Entry<K, V> entry) {
+    try {
+      return entry.value.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a cache value", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Evict entries until the total weight is within the limit. Only one thread evicts or
+   * sweeps at a time; others just go on since the evicting thread will take care of their
+   * entries.
+   */
+  private void evict() {
+    if (!this.evictionLock.tryLock())
+      return;
+    try {
+      //Every entry is visited at most twice: the first visit clears its referenced flag.
+      int visits = 2 * this.clockSize.get() + 1;
+      while (this.weight.get() > this.maxWeight && visits-- > 0) {
+        Entry<K, V> entry = this.clock.poll();
+        if (entry == null)
+          break;
+        boolean removed;
+        synchronized (entry) {
+          removed = entry.removed;
+        }
+        if (entry.referenced && !removed) {
+          entry.referenced = false;
+          this.clock.add(entry);
+          continue;
+        }
+        unlinked(entry);
+        if (this.map.remove(entry.key, entry)) {
+          removed(entry);
+          this.evictions.increment();
+        }
+      }
+    }
+    finally {
+      this.evictionLock.unlock();
+    }
+  }
+
+  public long hitCount() {
+    return this.hits.sum();
+  }
+
+  public long missCount() {
+    return this.misses.sum();
+  }
+
+  public long evictionCount() {
+    return this.evictions.sum();
+  }
+
+  public int size() {
+    return this.map.size();
+  }
+
+  public long weight() {
+    return this.weight.get();
+  }
+
+  @Override
+  public String toString() {
+    long hits = hitCount();
+    long requests = hits + missCount();
+    return String.format("hits=%d; misses=%d; hitRate=%.4f; evictions=%d; entries=%d; weight=%d/%s",
+      hits, missCount(), requests == 0 ? 0.0 : (double)hits / requests, evictionCount(), size(), weight(),
+      this.maxWeight > 0 ? Long.toString(this.maxWeight) : "unbounded");
+  }
+}
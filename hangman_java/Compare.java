@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays the same input words through several strategies and reports the score and the
+ * throughput of each, so a change can be judged on both. The strategies share the indexes
+ * of the dictionary, which are loaded once, and each plays all the words on a thread of
+ * its own, all of them at the same time unless parallel=false is given. Running them at
+ * the same time is quicker, but on fewer processors than strategies their throughputs
+ * are only good for comparing with each other.
+ *
+ * Options are given as name=value arguments:
+ *   strategies  comma separated names of the strategies (default all)
+ *   guesses     maximum wrong guesses (default hangman_guesses or 5)
+ *   parallel    true to run the strategies at the same time (default true)
+ */
+class Compare {
+  /**
+   * The outcome of playing the words through a strategy
+   */
+  private static class Result {
+    long totalScore = 0;
+    long nanos = 0;
+  }
+
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_dict");
+    if (file == null)
+      file = "words.txt";
+
+    String names = null;
+    int guesses = 5;
+    String sguesses = System.getenv("hangman_guesses");
+    boolean parallel = true;
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      String name = eq < 0 ? arg : arg.substring(0, eq);
+      String value = eq < 0 ? "" : arg.substring(eq + 1);
+      if (name.equals("strategies"))
+        names = value;
+      else if (name.equals("guesses"))
+        sguesses = value;
+      else if (name.equals("parallel"))
+        parallel = Boolean.parseBoolean(value);
+      else {
+        System.err.println(String.format("Bad option '%s'!", arg));
+        System.exit(-1);
+      }
+    }
+    if (sguesses != null) {
+      try {
+        guesses = Integer.parseInt(sguesses);
+      }
+      catch (NumberFormatException e) {
+        guesses = 5;
+      }
+      if (guesses < 1)
+        guesses = 5;
+    }
+
+    List<String> selected = new ArrayList<String>();
+    if (names != null) {
+      for (String name : names.split(","))
+        selected.add(name.trim());
+    }
+    else {
+      selected.addAll(Strategies.names());
+    }
+
+    List<WordIndex> indexes = Main.loadIndexes(file, Main.checksum(file));
+    final List<GuessingStrategy> strategies = new ArrayList<GuessingStrategy>();
+    for (String name : selected) {
+      try {
+        strategies.add(Strategies.create(name, indexes, MyGuessingStrategy.DEFAULT_CACHE_WEIGHT));
+      }
+      catch (IllegalArgumentException e) {
+        System.err.println(e.getMessage());
+        System.exit(-1);
+      }
+    }
+
+    //Read all the words first, so reading them isn't measured
+    final List<String> words = new ArrayList<String>();
+    try {
+      WordReader in = new WordReader(System.in);
+      String word;
+      while ((word = in.next()) != null) {
+        if (WordIndex.contains(indexes, word))
+          words.add(word);
+        else
+          System.err.println(String.format("Word '%s' is not in dicitionary!", word));
+      }
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot read input: %s", e.getMessage()));
+      System.exit(-1);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(parallel ? strategies.size() : 1);
+    List<Future<Result>> futures = new ArrayList<Future<Result>>();
+    final int maxWrong = guesses;
+    for (final GuessingStrategy strategy : strategies) {
+      futures.add(pool.submit(new Callable<Result>() {
+        public Result call() {
+          Result result = new Result();
+          GuessResult guess = new GuessResult();
+          long start = System.nanoTime();
+          for (String word : words)
+            result.totalScore += new HangmanGame(word, maxWrong).run(strategy, false, guess);
+          result.nanos = System.nanoTime() - start;
+          return result;
+        }
+      }));
+    }
+
+    System.out.println(String.format("%-12s %8s %10s %12s %10s %12s", "STRATEGY", "NUM", "AVG", "TOTAL", "TIME(ms)", "GAMES/S"));
+    try {
+      for (int i = 0; i < strategies.size(); i++) {
+        Result result = futures.get(i).get();
+        int total = words.size();
+        System.out.println(String.format("%-12s %8d %10.4f %12d %10.1f %12.0f", selected.get(i), total,
+          total > 0 ? (double)result.totalScore / total : 0.0, result.totalScore, result.nanos / 1e6,
+          result.nanos > 0 ? total * 1e9 / result.nanos : 0.0));
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.exit(-1);
+    }
+    catch (ExecutionException e) {
+      System.err.println(String.format("Game failed: %s", e.getCause()));
+      System.exit(-1);
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,315 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a game for every word in the dictionary and reports the scores by word length
+ * and a histogram of the scores, for one or more maximum wrong guesses.
+ * The words are split into shards of words of the same length, so all the games of a
+ * shard use the same warm index, and shards are played in parallel. Finished shards are
+ * appended to a checkpoint file, and shards found in it are skipped when run again. The
+ * checkpoint file starts with the checksum of the dictionary and the name and version of
+ * the strategy, so a file of another dictionary or strategy is started over.
+ *
+ * Options are given as name=value arguments:
+ *   guesses     comma separated maximum wrong guesses (default hangman_guesses or 5)
+ *   threads     number of worker threads (default number of processors)
+ *   shard       maximum number of words in a shard (default 4096)
+ *   checkpoint  file of finished shards to resume from (default none)
+ *   strategy    name of the strategy (default hangman_strategy or frequency)
+ */
+class Evaluate {
+  /**
+   * Scores are 0 to 25, where 25 is for a lost game.
+   */
+  private static final int MAX_SCORE = 25;
+
+  /**
+   * A shard of words of the same length, i.e. words of ids [from, to) in an index,
+   * and its results once played.
+   */
+  private static class Shard {
+    final int guesses;
+    final int length;
+    final int from;
+    final int to;
+    long total = 0;
+    int[] histogram = new int[MAX_SCORE + 1];
+
+    Shard(int guesses, int length, int from, int to) {
+      this.guesses = guesses;
+      this.length = length;
+      this.from = from;
+      this.to = to;
+    }
+
+    String key() {
+      return guesses + " " + length + " " + from + " " + to;
+    }
+
+    /**
+     * @return The line of the shard in a checkpoint file
+     */
+    String line() {
+      StringBuilder line = new StringBuilder(key()).append(' ').append(total);
+      for (int n : histogram)
+        line.append(' ').append(n);
+      return line.toString();
+    }
+  }
+
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_dict");
+    if (file == null)
+      file = "words.txt";
+
+    String sguesses = System.getenv("hangman_guesses");
+    int threads = Runtime.getRuntime().availableProcessors();
+    int shardSize = 4096;
+    String checkpoint = null;
+    String strategyName = Strategies.chosen();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      String name = eq < 0 ? arg : arg.substring(0, eq);
+      String value = eq < 0 ? "" : arg.substring(eq + 1);
+      try {
+        if (name.equals("guesses"))
+          sguesses = value;
+        else if (name.equals("threads"))
+          threads = Integer.parseInt(value);
+        else if (name.equals("shard"))
+          shardSize = Integer.parseInt(value);
+        else if (name.equals("checkpoint"))
+          checkpoint = value;
+        else if (name.equals("strategy"))
+          strategyName = value;
+        else
+          throw new IllegalArgumentException();
+        if (threads < 1 || shardSize < 1)
+          throw new IllegalArgumentException();
+      }
+      catch (IllegalArgumentException e) {
+        System.err.println(String.format("Bad option '%s'!", arg));
+        System.exit(-1);
+      }
+    }
+
+    List<Integer> guessList = new ArrayList<Integer>();
+    for (String s : (sguesses != null ? sguesses : "5").split(",")) {
+      try {
+        int guesses = Integer.parseInt(s.trim());
+        if (guesses < 1)
+          throw new NumberFormatException();
+        guessList.add(guesses);
+      }
+      catch (NumberFormatException e) {
+        System.err.println(String.format("%s is not a valid number of guesses!", s));
+        System.exit(-1);
+      }
+    }
+
+    Long checksum = Main.checksum(file);
+    final List<WordIndex> indexes = Main.loadIndexes(file, checksum);
+    final GuessingStrategy strategy = Main.loadStrategy(file, checksum, indexes, MyGuessingStrategy.DEFAULT_CACHE_WEIGHT,
+      strategyName);
+
+    //Shards in the order of the report
+    List<Shard> shards = new ArrayList<Shard>();
+    for (int guesses : guessList) {
+      for (int len = 1; len <= indexes.size(); len++) {
+        WordIndex index = indexes.get(len - 1);
+        if (index == null)
+          continue;
+        for (int from = 0; from < index.size(); from += shardSize)
+          shards.add(new Shard(guesses, len, from, Math.min(from + shardSize, index.size())));
+      }
+    }
+
+    Map<String, Shard> done = null;
+    String header = null;
+    if (checkpoint != null) {
+      try {
+        if (checksum == null)
+          throw new IOException("Cannot read the dictionary");
+        header = "DICT " + checksum + " " + Strategies.fingerprint(strategyName);
+        if (new File(checkpoint).exists())
+          done = readCheckpoint(checkpoint, header);
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot read checkpoint file '%s'!", checkpoint));
+        System.exit(-1);
+      }
+    }
+
+    Writer out = null;
+    try {
+      if (checkpoint != null) {
+        out = new FileWriter(checkpoint, done != null);
+        if (done == null)
+          out.write(header + "\n");
+      }
+      if (done == null)
+        done = new HashMap<String, Shard>();
+      final Writer checkpointOut = out;
+
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      int resumed = 0;
+      for (int i = 0; i < shards.size(); i++) {
+        final Shard shard = shards.get(i);
+        Shard finished = done.get(shard.key());
+        if (finished != null) {
+          shards.set(i, finished);
+          resumed++;
+          continue;
+        }
+        futures.add(pool.submit(new Callable<Void>() {
+          public Void call() throws IOException {
+            play(strategy, indexes.get(shard.length - 1), shard);
+            if (checkpointOut != null) {
+              synchronized (checkpointOut) {
+                checkpointOut.write(shard.line() + "\n");
+                checkpointOut.flush();
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      if (resumed > 0)
+        System.err.println(String.format("Resumed %d of %d shards from '%s'.", resumed, shards.size(), checkpoint));
+
+      try {
+        for (Future<?> future : futures)
+          future.get();
+      }
+      finally {
+        pool.shutdownNow();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.exit(-1);
+    }
+    catch (ExecutionException e) {
+      System.err.println(String.format("Evaluation failed: %s", e.getCause()));
+      System.exit(-1);
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write checkpoint file '%s'!", checkpoint));
+      System.exit(-1);
+    }
+    finally {
+      if (out != null) {
+        try {
+          out.close();
+        }
+        catch (IOException e) {
+        }
+      }
+    }
+
+    for (int guesses : guessList)
+      report(guesses, shards);
+  }
+
+  /**
+   * Play a game for each word of a shard and record the scores.
+   */
+  private static void play(GuessingStrategy strategy, WordIndex index, Shard shard) {
+    GuessResult guess = new GuessResult();
+    for (int id = shard.from; id < shard.to; id++) {
+      int score = new HangmanGame(index.word(id), shard.guesses).run(strategy, false, guess);
+      shard.total += score;
+      shard.histogram[Math.min(score, MAX_SCORE)]++;
+    }
+  }
+
+  /**
+   * @return The finished shards in a checkpoint file, or null if the file is not of the
+   * dictionary of the header.
+   */
+  private static Map<String, Shard> readCheckpoint(String file, String header) throws IOException {
+    Map<String, Shard> shards = new HashMap<String, Shard>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line = in.readLine();
+      if (line == null || !line.equals(header))
+        return null;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 5 + MAX_SCORE + 1)
+          continue; //A line cut short by an interrupted run
+        try {
+          Shard shard = new Shard(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+            Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+          shard.total = Long.parseLong(fields[4]);
+          for (int i = 0; i <= MAX_SCORE; i++)
+            shard.histogram[i] = Integer.parseInt(fields[5 + i]);
+          shards.put(shard.key(), shard);
+        }
+        catch (NumberFormatException e) {
+          continue;
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    return shards;
+  }
+
+  /**
+   * Print the results of one maximum wrong guesses: average scores by word length, the
+   * score histogram and the summary.
+   */
+  private static void report(int guesses, List<Shard> shards) {
+    Map<Integer, long[]> lengths = new TreeMap<Integer, long[]>(); //length -> {words, total}
+    int[] histogram = new int[MAX_SCORE + 1];
+    long totalScore = 0;
+    int total = 0;
+    for (Shard shard : shards) {
+      if (shard.guesses != guesses)
+        continue;
+      long[] stat = lengths.get(shard.length);
+      if (stat == null) {
+        stat = new long[2];
+        lengths.put(shard.length, stat);
+      }
+      stat[0] += shard.to - shard.from;
+      stat[1] += shard.total;
+      for (int i = 0; i <= MAX_SCORE; i++)
+        histogram[i] += shard.histogram[i];
+      totalScore += shard.total;
+      total += shard.to - shard.from;
+    }
+
+    System.out.println(String.format("=============================\nGUESSES: %d", guesses));
+    System.out.println(String.format("%6s %8s %10s", "LENGTH", "NUM", "AVG"));
+    for (Map.Entry<Integer, long[]> entry : lengths.entrySet()) {
+      long[] stat = entry.getValue();
+      System.out.println(String.format("%6d %8d %10.4f", entry.getKey(), stat[0], (double)stat[1] / stat[0]));
+    }
+    System.out.println(String.format("%6s %8s %10s", "SCORE", "NUM", "PERCENT"));
+    for (int i = 0; i <= MAX_SCORE; i++) {
+      if (histogram[i] > 0)
+        System.out.println(String.format("%6d %8d %9.3f%%", i, histogram[i], 100.0 * histogram[i] / total));
+    }
+    if (total > 0)
+      System.out.println(String.format("-----------------------------\nAVG: %g\nNUM: %d\nTOTAL: %g\n",
+        (double)totalScore / total, total, (double)totalScore));
+  }
+}
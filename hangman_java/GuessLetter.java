@@ -2,15 +2,37 @@
  * A Guess that represents guessing a letter for the current Hangman game
  */
 public class GuessLetter implements Guess {
+  /**
+   * Guesses of the letters 'A' to 'Z', which are shared by all games.
+   */
+  private static final GuessLetter[] LETTERS = new GuessLetter[26];
+  static {
+    for (int i = 0; i < LETTERS.length; i++)
+      LETTERS[i] = new GuessLetter((char)('A' + i));
+  }
+
   private final char guess;
 
+  /**
+   * @return The guess of a letter, which is shared for letters 'A' to 'Z'
+   */
+  public static GuessLetter of(char guess) {
+    if (guess >= 'A' && guess <= 'Z')
+      return LETTERS[guess - 'A'];
+    return new GuessLetter(guess);
+  }
+
   public GuessLetter(char guess) {
     this.guess = guess;
   }
 
+  public char getGuess() {
+    return guess;
+  }
+
   @Override
   public void makeGuess(HangmanGame game) {
-    game.guessLetter(guess);
+    game.makeLetterGuess(guess);
   }
 
   @Override
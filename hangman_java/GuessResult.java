@@ -0,0 +1,110 @@
+/**
+ * A reusable holder of the next guess for the current Hangman game, so that a strategy
+ * can give guesses without making a new Guess object for every turn.
+ */
+public class GuessResult {
+  private boolean isWord = false;
+  private char letter = 0;
+  private char[] word = new char[32];
+  private int length = 0;
+
+  /**
+   * A guess given as a Guess object, by strategies not writing guesses directly.
+   */
+  private Guess guess = null;
+
+  /**
+   * Make the guess a letter.
+   */
+  public void setLetter(char letter) {
+    this.guess = null;
+    this.isWord = false;
+    this.letter = letter;
+  }
+
+  /**
+   * Make the guess a word, whose letters are to be written to the returned buffer.
+   * @param length The length of the word
+   * @return The buffer of the word, which is at least length long
+   */
+  public char[] setWord(int length) {
+    this.guess = null;
+    this.isWord = true;
+    this.length = length;
+    if (this.word.length < length)
+      this.word = new char[Math.max(length, this.word.length * 2)];
+    return this.word;
+  }
+
+  /**
+   * Make the guess a Guess object. Letters and words are taken out of it, so only guesses
+   * of other kinds are kept as objects.
+   */
+  public void setGuess(Guess guess) {
+    if (guess instanceof GuessLetter) {
+      setLetter(((GuessLetter)guess).getGuess());
+    }
+    else if (guess instanceof GuessWord) {
+      String word = ((GuessWord)guess).getGuess();
+      word.getChars(0, word.length(), setWord(word.length()), 0);
+    }
+    else {
+      this.guess = guess;
+    }
+  }
+
+  /**
+   * @return The letter if the guess is a letter set by setLetter, otherwise 0
+   */
+  public char getLetter() {
+    return this.guess == null && !this.isWord ? this.letter : 0;
+  }
+
+  /**
+   * Append the guess as plain text, the letter or the word, e.g. "E" or "HANGMAN". A guess
+   * of another kind than letters and words is appended as its toString.
+   */
+  public void appendTo(StringBuilder out) {
+    if (this.guess != null)
+      out.append(this.guess.toString());
+    else if (this.isWord)
+      out.append(this.word, 0, this.length);
+    else
+      out.append(this.letter);
+  }
+
+  /**
+   * Applies the current guess to the specified game.
+   * @param game The game to make the guess on.
+   */
+  public void makeGuess(HangmanGame game) {
+    if (this.guess != null)
+      this.guess.makeGuess(game);
+    else if (this.isWord)
+      game.makeWordGuess(this.word, this.length);
+    else
+      game.makeLetterGuess(this.letter);
+  }
+
+  /**
+   * @return The current guess as a Guess object
+   */
+  public Guess toGuess() {
+    if (this.guess != null)
+      return this.guess;
+    else if (this.isWord)
+      return new GuessWord(new String(this.word, 0, this.length));
+    else
+      return GuessLetter.of(this.letter);
+  }
+
+  @Override
+  public String toString() {
+    if (this.guess != null)
+      return this.guess.toString();
+    else if (this.isWord)
+      return "GuessWord[" + new String(this.word, 0, this.length) + "]";
+    else
+      return "GuessLetter[" + this.letter + "]";
+  }
+}
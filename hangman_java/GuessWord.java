@@ -8,6 +8,10 @@ public class GuessWord implements Guess {
     this.guess = guess;
   }
 
+  public String getGuess() {
+    return guess;
+  }
+
   @Override
   public void makeGuess(HangmanGame game) {
     game.guessWord(guess);
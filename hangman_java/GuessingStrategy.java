@@ -3,4 +3,20 @@
  */
 public interface GuessingStrategy {
   Guess nextGuess(HangmanGame game);
+
+  /**
+   * Writes the next guess to a reusable result instead of returning a new Guess.
+   * Strategies that can give guesses without allocating should override it.
+   */
+  default void nextGuess(HangmanGame game, GuessResult result) {
+    result.setGuess(nextGuess(game));
+  }
+
+  /**
+   * Tells the strategy that a game it has guessed for is over, so it can let go of what it
+   * keeps for the game. It may be called by any thread, e.g. when a game left unfinished
+   * is discarded.
+   */
+  default void gameOver(HangmanGame game) {
+  }
 }
@@ -1,5 +1,8 @@
+import java.util.AbstractSet;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 class HangmanGame {
@@ -29,19 +32,36 @@ class HangmanGame {
   private final char[] guessedSoFar;
 
   /**
-   * Set of all correct letter guesses so far (e.g. 'C', 'F', 'L', 'T', 'U')
+   * Number of letters in guessedSoFar still marked by MYSTERY_LETTER
    */
-  private Set<Character> correctlyGuessedLetters = new HashSet<Character>();
+  private int blanks;
 
   /**
-   * Set of all incorrect letter guesses so far (e.g. 'R', 'S')
+   * Set of all correct letter guesses so far (e.g. 'C', 'F', 'L', 'T', 'U'). Letters 'A' to 'Z'
+   * are kept as bits of the mask, bit 0 for 'A'; other letters are kept in the set, which is
+   * made on demand.
    */
-  private Set<Character> incorrectlyGuessedLetters = new HashSet<Character>();
+  private int correctMask = 0;
+  private Set<Character> correctOthers = null;
+
+  /**
+   * Set of all incorrect letter guesses so far (e.g. 'R', 'S'), kept the same way as the correct ones.
+   */
+  private int incorrectMask = 0;
+  private Set<Character> incorrectOthers = null;
+
+  /**
+   * Read-only views of the sets of guessed letters, which are made on demand
+   */
+  private Set<Character> correctlyGuessedLetters = null;
+  private Set<Character> incorrectlyGuessedLetters = null;
+  private Set<Character> allGuessedLetters = null;
 
   /**
    * Set of all incorrect word guesses so far (e.g. 'FACTORS')
    */
-  private Set<String> incorrectlyGuessedWords = new HashSet<String>();
+  private final Set<String> incorrectlyGuessedWords = new HashSet<String>(4);
+  private final Set<String> incorrectlyGuessedWordsView = Collections.unmodifiableSet(incorrectlyGuessedWords);
 
   /**
    * @param secretWord The word that needs to be guessed
@@ -52,6 +72,8 @@ class HangmanGame {
     this.guessedSoFar = new char[secretWord.length()];
     for (int i = 0; i < secretWord.length(); i++) {
       guessedSoFar[i] = MYSTERY_LETTER;
+      if (this.secretWord.charAt(i) != MYSTERY_LETTER)
+        blanks++;
     }
     this.maxWrongGuesses = maxWrongGuesses;
   }
@@ -62,6 +84,15 @@ class HangmanGame {
    * (which will contain MYSTERY_LETTER in place of unknown letters)
    */
   public String guessLetter(char ch) {
+    makeLetterGuess(ch);
+    return getGuessedSoFar();
+  }
+
+  /**
+   * Guess the specified letter and update the game state accordingly, like guessLetter
+   * but without making the string representation of the game state.
+   */
+  public void makeLetterGuess(char ch) {
     assertCanKeepGuessing();
     ch = Character.toUpperCase(ch);
 
@@ -69,19 +100,30 @@ class HangmanGame {
     boolean goodGuess = false;
     for (int i = 0; i < secretWord.length(); i++) {
       if (secretWord.charAt(i) == ch) {
-        guessedSoFar[i] = ch;
+        if (guessedSoFar[i] != ch) {
+          guessedSoFar[i] = ch;
+          blanks--;
+        }
         goodGuess = true;
       }
     }
 
     // update the proper set of guessed letters
-    if (goodGuess) {
-      correctlyGuessedLetters.add(ch);
+    if (ch >= 'A' && ch <= 'Z') {
+      if (goodGuess) {
+        correctMask |= 1 << (ch - 'A');
+      } else {
+        incorrectMask |= 1 << (ch - 'A');
+      }
+    } else if (goodGuess) {
+      if (correctOthers == null)
+        correctOthers = new HashSet<Character>();
+      correctOthers.add(ch);
     } else {
-      incorrectlyGuessedLetters.add(ch);
+      if (incorrectOthers == null)
+        incorrectOthers = new HashSet<Character>();
+      incorrectOthers.add(ch);
     }
-
-    return getGuessedSoFar();
   }
 
   /**
@@ -94,10 +136,7 @@ class HangmanGame {
     guess = guess.toUpperCase();
 
     if (guess.equals(secretWord)) {
-      // if the guess is correct, then set guessedSoFar to the secret word
-      for (int i = 0; i<secretWord.length(); i++) {
-        guessedSoFar[i] = secretWord.charAt(i);
-      }
+      win();
     } else {
       incorrectlyGuessedWords.add(guess);
     }
@@ -105,6 +144,35 @@ class HangmanGame {
     return getGuessedSoFar();
   }
 
+  /**
+   * Guess the specified word, given as the first length chars of an array, and update the
+   * game state accordingly. Unlike guessWord, no string is made unless the guess is wrong.
+   */
+  public void makeWordGuess(char[] guess, int length) {
+    assertCanKeepGuessing();
+
+    boolean goodGuess = length == secretWord.length();
+    for (int i = 0; i < length && goodGuess; i++) {
+      goodGuess = Character.toUpperCase(guess[i]) == secretWord.charAt(i);
+    }
+
+    if (goodGuess) {
+      win();
+    } else {
+      incorrectlyGuessedWords.add(new String(guess, 0, length).toUpperCase());
+    }
+  }
+
+  /**
+   * Set guessedSoFar to the secret word
+   */
+  private void win() {
+    for (int i = 0; i<secretWord.length(); i++) {
+      guessedSoFar[i] = secretWord.charAt(i);
+    }
+    blanks = 0;
+  }
+
   /**
    * @return The score for the current game state
    */
@@ -112,7 +180,7 @@ class HangmanGame {
     if (gameStatus() == Status.GAME_LOST) {
       return 25;
     } else {
-      return numWrongGuessesMade() + correctlyGuessedLetters.size();
+      return numWrongGuessesMade() + numCorrectLetters();
     }
   }
 
@@ -126,7 +194,7 @@ class HangmanGame {
    * @return The current game status
    */
   public Status gameStatus() {
-    if (secretWord.equals(getGuessedSoFar())) {
+    if (blanks == 0) {
       return Status.GAME_WON;
     } else if (numWrongGuessesMade() > maxWrongGuesses) {
       return Status.GAME_LOST;
@@ -139,7 +207,12 @@ class HangmanGame {
    * @return Number of wrong guesses made so far
    */
   public int numWrongGuessesMade() {
-    return incorrectlyGuessedLetters.size() + incorrectlyGuessedWords.size();
+    return Integer.bitCount(incorrectMask) + (incorrectOthers == null ? 0 : incorrectOthers.size())
+      + incorrectlyGuessedWords.size();
+  }
+
+  private int numCorrectLetters() {
+    return Integer.bitCount(correctMask) + (correctOthers == null ? 0 : correctOthers.size());
   }
 
   /**
@@ -165,34 +238,65 @@ class HangmanGame {
   }
 
   /**
-   * @return Set of all correctly guessed letters so far
+   * @return The letter guessed so far at a position, or MYSTERY_LETTER if it's unknown
+   */
+  public char getGuessedSoFar(int i) {
+    return guessedSoFar[i];
+  }
+
+  /**
+   * @return Number of unknown letters in the secret word
+   */
+  public int numBlanks() {
+    return blanks;
+  }
+
+  /**
+   * @return Correctly guessed letters 'A' to 'Z' so far as bits, bit 0 for 'A'
+   */
+  public int getCorrectLetterMask() {
+    return correctMask;
+  }
+
+  /**
+   * @return Incorrectly guessed letters 'A' to 'Z' so far as bits, bit 0 for 'A'
+   */
+  public int getIncorrectLetterMask() {
+    return incorrectMask;
+  }
+
+  /**
+   * @return Set of all correctly guessed letters so far. It's a read-only view of the game state.
    */
   public Set<Character> getCorrectlyGuessedLetters() {
-    return Collections.unmodifiableSet(correctlyGuessedLetters);
+    if (correctlyGuessedLetters == null)
+      correctlyGuessedLetters = new LetterSet(true, false);
+    return correctlyGuessedLetters;
   }
 
   /**
-   * @return Set of all incorrectly guessed letters so far
+   * @return Set of all incorrectly guessed letters so far. It's a read-only view of the game state.
    */
   public Set<Character> getIncorrectlyGuessedLetters() {
-    return Collections.unmodifiableSet(incorrectlyGuessedLetters);
+    if (incorrectlyGuessedLetters == null)
+      incorrectlyGuessedLetters = new LetterSet(false, true);
+    return incorrectlyGuessedLetters;
   }
 
   /**
-   * @return Set of all guessed letters so far
+   * @return Set of all guessed letters so far. It's a read-only view of the game state.
    */
   public Set<Character> getAllGuessedLetters() {
-    Set<Character> guessed = new HashSet<Character>();
-    guessed.addAll(correctlyGuessedLetters);
-    guessed.addAll(incorrectlyGuessedLetters);
-    return guessed;
+    if (allGuessedLetters == null)
+      allGuessedLetters = new LetterSet(true, true);
+    return allGuessedLetters;
   }
 
   /**
    * @return Set of all incorrectly guessed words so far
    */
   public Set<String> getIncorrectlyGuessedWords() {
-    return Collections.unmodifiableSet(incorrectlyGuessedWords);
+    return incorrectlyGuessedWordsView;
   }
 
   /**
@@ -208,17 +312,122 @@ class HangmanGame {
   }
 
   public int run(GuessingStrategy strategy, boolean debugOut) {
+    return run(strategy, debugOut, new GuessResult());
+  }
+
+  /**
+   * Play the game to the end with a strategy.
+   * @param guess A holder of guesses to reuse, so the game makes no garbage with
+   * strategies giving guesses into it.
+   * @return The final score
+   */
+  public int run(GuessingStrategy strategy, boolean debugOut, GuessResult guess) {
+    return run(strategy, debugOut, guess, null);
+  }
+
+  /**
+   * Play the game to the end with a strategy, and record the guesses made.
+   * @param record Where the guesses are appended separated by spaces, or null
+   * @return The final score
+   */
+  public int run(GuessingStrategy strategy, boolean debugOut, GuessResult guess, StringBuilder record) {
+    long start = Metrics.ENABLED || Trace.ENABLED ? System.nanoTime() : 0;
+    if (record == null && Trace.ENABLED)
+      record = Trace.start();
+    int guesses = 0;
     while(gameStatus() == Status.KEEP_GUESSING) {
       if (debugOut)
         System.err.println(toString());
-      Guess guess = strategy.nextGuess(this);
+      strategy.nextGuess(this, guess);
       if (debugOut)
         System.err.println(guess.toString());
+      if (record != null) {
+        if (guesses > 0)
+          record.append(' ');
+        guess.appendTo(record);
+      }
       guess.makeGuess(this);
+      guesses++;
     }
+    strategy.gameOver(this);
     if (debugOut)
       System.err.println(toString());
+    if (Metrics.ENABLED) {
+      Metrics.gameNanos.record(System.nanoTime() - start);
+      Metrics.gameGuesses.record(guesses);
+    }
+    if (Trace.ENABLED)
+      Trace.game(this.secretWord, this.maxWrongGuesses, record, currentScore(), System.nanoTime() - start);
     return currentScore();
   }
 
+  /**
+   * A read-only view of the correctly and/or incorrectly guessed letters.
+   */
+  private class LetterSet extends AbstractSet<Character> {
+    private final boolean correct;
+    private final boolean incorrect;
+
+    LetterSet(boolean correct, boolean incorrect) {
+      this.correct = correct;
+      this.incorrect = incorrect;
+    }
+
+    private int mask() {
+      return (correct ? correctMask : 0) | (incorrect ? incorrectMask : 0);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Character))
+        return false;
+      char ch = (Character)o;
+      if (ch >= 'A' && ch <= 'Z')
+        return (mask() & (1 << (ch - 'A'))) != 0;
+      return (correct && correctOthers != null && correctOthers.contains(ch))
+        || (incorrect && incorrectOthers != null && incorrectOthers.contains(ch));
+    }
+
+    @Override
+    public int size() {
+      return Integer.bitCount(mask()) + (correct && correctOthers != null ? correctOthers.size() : 0)
+        + (incorrect && incorrectOthers != null ? incorrectOthers.size() : 0);
+    }
+
+    @Override
+    public Iterator<Character> iterator() {
+      final int mask = mask();
+      final Iterator<Character> correctIt = correct && correctOthers != null
+        ? Collections.unmodifiableSet(correctOthers).iterator() : null;
+      final Iterator<Character> incorrectIt = incorrect && incorrectOthers != null
+        ? Collections.unmodifiableSet(incorrectOthers).iterator() : null;
+
+      return new Iterator<Character>() {
+        private int rest = mask;
+
+        public boolean hasNext() {
+          return rest != 0 || (correctIt != null && correctIt.hasNext())
+            || (incorrectIt != null && incorrectIt.hasNext());
+        }
+
+        public Character next() {
+          if (rest != 0) {
+            char ch = (char)('A' + Integer.numberOfTrailingZeros(rest));
+            rest &= rest - 1;
+            return ch;
+          }
+          if (correctIt != null && correctIt.hasNext())
+            return correctIt.next();
+          if (incorrectIt != null && incorrectIt.hasNext())
+            return incorrectIt.next();
+          throw new NoSuchElementException();
+        }
+
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
 }
@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A lock-free histogram of non-negative values, such as latencies in nanoseconds.
+ * Like HdrHistogram, values are counted in buckets of a fixed relative precision: values
+ * below 64 have a bucket each, and every power of two above is split into 32 buckets, so
+ * a value is known within about 3% whatever its magnitude, in a fixed array of counts.
+ */
+class Histogram {
+  private static final int SUB_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int LINEAR = 2 * SUB_BUCKETS;
+  private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(new LongBinaryOperator() {
+    public long applyAsLong(long left, long right) {
+      return Math.max(left, right);
+    }
+  }, 0);
+
+  public void record(long value) {
+    if (value < 0)
+      value = 0;
+    this.counts.incrementAndGet(bucket(value));
+    this.count.increment();
+    this.sum.add(value);
+    this.max.accumulate(value);
+  }
+
+  public long count() {
+    return this.count.sum();
+  }
+
+  public double mean() {
+    long count = this.count.sum();
+    return count == 0 ? 0 : (double)this.sum.sum() / count;
+  }
+
+  public long max() {
+    return this.max.get();
+  }
+
+  /**
+   * @param percentile The percentile, 0 to 100
+   * @return The highest value of the bucket the percentile falls in
+   */
+  public long percentile(double percentile) {
+    long count = this.count.sum();
+    if (count == 0)
+      return 0;
+    long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts.get(i);
+      if (seen >= rank)
+        return Math.min(highest(i), max());
+    }
+    return max();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++)
+      this.counts.set(i, 0);
+    this.count.reset();
+    this.sum.reset();
+    this.max.reset();
+  }
+
+  private static int bucket(long value) {
+    if (value < LINEAR)
+      return (int)value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value); //At least SUB_BITS + 1
+    int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+  }
+
+  private static long highest(int bucket) {
+    if (bucket < LINEAR)
+      return bucket;
+    int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+    long sub = (bucket - LINEAR) % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d; mean=%.1f; p50=%d; p90=%d; p99=%d; max=%d",
+      count(), mean(), percentile(50), percentile(90), percentile(99), max());
+  }
+}
@@ -0,0 +1,163 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+
+/**
+ * A precompiled dictionary index, so a strategy can be made without parsing the dictionary,
+ * grouping its words by length and counting their letters again. It's a serialized cache of
+ * the words as letter codes and their statistics: the file is read into memory, and the
+ * bitsets and the hash table of each WordIndex are made from the codes when it's asked for,
+ * which is a linear pass. The file is made by running this class, and starts with the
+ * checksum of the dictionary it's compiled from; a file whose checksum doesn't match the
+ * dictionary any more is ignored.
+ *
+ * File layout (big-endian):
+ *   int magic, int version, long dictionary checksum, int number of lengths
+ *   then for each word length from 1, int number of words, and if not 0:
+ *     int alphabet size, char[] letters, int[] letter frequencies, int[] word counts,
+ *     byte[] letter codes of the words
+ */
+class IndexFile {
+  private static final int MAGIC = 0x484d4958; // "HMIX"
+  private static final int VERSION = 1;
+
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_dict");
+    if (file == null)
+      file = "words.txt";
+    String output = args.length > 0 ? args[0] : path(file);
+
+    Set<String> dict = Main.readDictionary(file);
+    try {
+      MyGuessingStrategy strategy = new MyGuessingStrategy(dict, MyGuessingStrategy.DEFAULT_CACHE_WEIGHT);
+      write(new File(output), strategy.indexes(), checksum(new File(file)));
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write index file '%s': %s", output, e.getMessage()));
+      System.exit(-1);
+    }
+    System.err.println(String.format("Index of '%s' is written to '%s'.", file, output));
+  }
+
+  /**
+   * @return The path of the index file of a dictionary, which is given by the hangman_index
+   * environment variable or otherwise next to the dictionary.
+   */
+  public static String path(String dict) {
+    String index = System.getenv("hangman_index");
+    return index != null ? index : dict + ".idx";
+  }
+
+  /**
+   * @return The checksum of the content of a dictionary file
+   */
+  public static long checksum(File dict) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(dict, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      CRC32 crc = new CRC32();
+      crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      return (channel.size() << 32) ^ crc.getValue();
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  public static void write(File file, List<WordIndex> indexes, long checksum) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(checksum);
+      out.writeInt(indexes.size());
+      for (WordIndex index : indexes) {
+        if (index == null) {
+          out.writeInt(0);
+          continue;
+        }
+        out.writeInt(index.size());
+        out.writeInt(index.alphabetSize());
+        for (char ch : index.letters())
+          out.writeChar(ch);
+        for (int n : index.frequency())
+          out.writeInt(n);
+        for (int n : index.wordCount())
+          out.writeInt(n);
+        out.write(index.arena());
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read the indexes from a file. The words and letter statistics are read at once, while
+   * the indexes over them are only made when they're asked for.
+   * @return Indexes of words by length, or null if the file is not of the current version or
+   * is compiled from a dictionary of a different checksum.
+   */
+  public static LazyIndexes read(File file, long checksum) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != checksum)
+        return null;
+
+      int lengths = in.readInt();
+      List<Callable<WordIndex>> makers = new ArrayList<Callable<WordIndex>>(lengths);
+      int[] sizes = new int[lengths];
+      for (int len = 1; len <= lengths; len++) {
+        int size = in.readInt();
+        sizes[len - 1] = size;
+        if (size == 0) {
+          makers.add(null);
+          continue;
+        }
+        final char[] letters = new char[in.readInt()];
+        for (int i = 0; i < letters.length; i++)
+          letters[i] = in.readChar();
+        final int[] frequency = readInts(in, letters.length);
+        final int[] wordCount = readInts(in, letters.length);
+        final byte[] arena = new byte[size * len];
+        in.readFully(arena);
+        final int length = len;
+        makers.add(new Callable<WordIndex>() {
+          public WordIndex call() {
+            return new WordIndex(letters, arena, length, frequency, wordCount);
+          }
+        });
+      }
+      return new LazyIndexes(makers, sizes);
+    }
+    catch (EOFException e) {
+      throw new IOException("Truncated index file", e);
+    }
+    catch (RuntimeException e) { //Otherwise broken file, e.g. a negative size
+      throw new IOException("Broken index file", e);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static int[] readInts(DataInputStream in, int count) throws IOException {
+    int[] values = new int[count];
+    for (int i = 0; i < count; i++)
+      values[i] = in.readInt();
+    return values;
+  }
+}
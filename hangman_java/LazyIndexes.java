@@ -0,0 +1,151 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Indexes of words by length, each of which is made the first time it's asked for, so a
+ * strategy only pays for indexing the lengths of the words it plays. An index being made
+ * by a thread is waited for by the other threads asking for it, so each is made only once.
+ * buildAll makes all of them at once with the lengths in parallel on the fork-join pool,
+ * and warm makes them on the pool in the background while the first games are played.
+ * The list is read-only, with null for the lengths of no words like any list of indexes.
+ */
+class LazyIndexes extends AbstractList<WordIndex> implements RandomAccess {
+  /**
+   * Given a length L, the task making the index of the words of the length is tasks[L - 1],
+   * or null if there's no such word
+   */
+  private final List<FutureTask<WordIndex>> tasks;
+
+  /**
+   * Given a length L, the number of the words of the length is sizes[L - 1], or null if
+   * it's only known by making the index
+   */
+  private final int[] sizes;
+
+  /**
+   * @param makers Makers of the indexes by length, with null for the lengths of no words
+   */
+  public LazyIndexes(List<Callable<WordIndex>> makers) {
+    this(makers, null);
+  }
+
+  /**
+   * @param sizes Numbers of the words of the indexes by length, or null if not known
+   */
+  public LazyIndexes(List<Callable<WordIndex>> makers, int[] sizes) {
+    this.tasks = new ArrayList<FutureTask<WordIndex>>(makers.size());
+    for (Callable<WordIndex> maker : makers)
+      this.tasks.add(maker != null ? new FutureTask<WordIndex>(maker) : null);
+    this.sizes = sizes;
+  }
+
+  /**
+   * @return The index of the words of length i + 1, which is made now if not made yet
+   */
+  @Override
+  public WordIndex get(int i) {
+    FutureTask<WordIndex> task = this.tasks.get(i);
+    return task != null ? join(task) : null;
+  }
+
+  @Override
+  public int size() {
+    return this.tasks.size();
+  }
+
+  /**
+   * @return The number of the words of length i + 1, which doesn't make the index if the
+   * numbers are given
+   */
+  public int wordCount(int i) {
+    if (this.sizes != null)
+      return this.sizes[i];
+    WordIndex index = get(i);
+    return index != null ? index.size() : 0;
+  }
+
+  /**
+   * @return The numbers of the words of the indexes by length, see wordCount
+   */
+  public static int[] wordCounts(List<WordIndex> indexes) {
+    int[] sizes = new int[indexes.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      if (indexes instanceof LazyIndexes) {
+        sizes[i] = ((LazyIndexes)indexes).wordCount(i);
+      }
+      else {
+        WordIndex index = indexes.get(i);
+        sizes[i] = index != null ? index.size() : 0;
+      }
+    }
+    return sizes;
+  }
+
+  /**
+   * @return true if the index of the words of length i + 1 is made, or there's no such word
+   */
+  public boolean isBuilt(int i) {
+    FutureTask<WordIndex> task = this.tasks.get(i);
+    return task == null || task.isDone();
+  }
+
+  /**
+   * Make all the indexes not made yet, in parallel on the common fork-join pool, and wait
+   * for them.
+   * @return This list
+   */
+  public LazyIndexes buildAll() {
+    List<ForkJoinTask<?>> jobs = new ArrayList<ForkJoinTask<?>>();
+    for (FutureTask<WordIndex> task : this.tasks) {
+      if (task != null && !task.isDone())
+        jobs.add(ForkJoinTask.adapt(task));
+    }
+    ForkJoinTask.invokeAll(jobs);
+    for (int i = 0; i < this.tasks.size(); i++)
+      get(i); //Throws what making an index has thrown
+    return this;
+  }
+
+  /**
+   * Start making the indexes not made yet on the common fork-join pool, whose threads don't
+   * keep the process alive, and return at once. An index asked for before its turn is made
+   * by the thread asking for it.
+   * @return This list
+   */
+  public LazyIndexes warm() {
+    for (FutureTask<WordIndex> task : this.tasks) {
+      if (task != null && !task.isDone())
+        ForkJoinPool.commonPool().execute(task);
+    }
+    return this;
+  }
+
+  /**
+   * Run a task unless it's run or being run already, and wait for its value.
+   */
+  static <V> V join(FutureTask<V> task) {
+    task.run();
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for an index", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new IllegalStateException(cause);
+    }
+  }
+}
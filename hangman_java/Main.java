@@ -1,8 +1,20 @@
-import java.util.Scanner;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class Main {
   public static void main(String[] args) {
@@ -25,35 +37,271 @@ class Main {
 
     boolean debug = System.getenv("hangman_debug") != null ? true : false;
 
-    // Read in dictionary file
-    Set<String> dict = new HashSet<String>();
+    // Number of games played at the same time. Debug output of concurrent games
+    // would interleave, so debugging always runs sequentially.
+    int threads = 1;
+    String sthreads = System.getenv("hangman_threads");
+    if (sthreads != null && !debug) {
+      try {
+        threads = Integer.parseInt(sthreads);
+      }
+      catch (NumberFormatException e) {
+        threads = 1;
+      }
+      if (threads < 1)
+        threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    // Maximum number of words held by the strategy's pattern cache, 0 for no limit.
+    long cache = MyGuessingStrategy.DEFAULT_CACHE_WEIGHT;
+    String scache = System.getenv("hangman_cache");
+    if (scache != null) {
+      try {
+        cache = Long.parseLong(scache);
+      }
+      catch (NumberFormatException e) {
+        cache = MyGuessingStrategy.DEFAULT_CACHE_WEIGHT;
+      }
+    }
+
+    boolean stats = System.getenv("hangman_stats") != null ? true : false;
+
+    // Maximum number of game outcomes remembered, 0 for no limit, and the file to keep them
+    // in between runs if any. Remembering outcomes only pays off when words come again, so
+    // it's only done if either is given.
+    long outcomeSize = OutcomeCache.DEFAULT_SIZE;
+    String soutcomeSize = System.getenv("hangman_outcomes_size");
+    String outcomeFile = System.getenv("hangman_outcomes");
+    boolean remember = soutcomeSize != null || outcomeFile != null;
+    if (soutcomeSize != null) {
+      try {
+        outcomeSize = Long.parseLong(soutcomeSize);
+      }
+      catch (NumberFormatException e) {
+        outcomeSize = OutcomeCache.DEFAULT_SIZE;
+      }
+    }
+
+    // Without a terminal for the input, e.g. when it's piped in, nobody reads the prompts,
+    // so they are skipped and results are written in large blocks instead of line by line.
+    boolean interactive = debug || (System.getenv("hangman_pipe") == null && isTerminal());
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+
+    Long checksum = checksum(file);
+    List<WordIndex> indexes = loadIndexes(file, checksum);
+    GuessingStrategy strategy = loadStrategy(file, checksum, indexes, cache);
+
+    // Games are played again when debugging, so their guesses are shown.
+    OutcomeCache outcomes = null;
+    if (remember && !debug)
+      outcomes = loadOutcomes(strategy, checksum, outcomeSize, outcomeFile);
+
     try {
-	    Scanner s = new Scanner(new File(file));
-      while (s.hasNext()) {
-		    String word = s.next();
-		    if (word.length() > 0)
-		      dict.add(word.toUpperCase());
+      if (threads > 1) {
+        runParallel(strategy, indexes, guesses, threads, outcomes, out, interactive);
+      }
+      else {
+        run(strategy, indexes, guesses, debug, outcomes, out, interactive);
       }
+      out.flush();
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write output: %s", e.getMessage()));
+      System.exit(-1);
+    }
+
+    if (outcomes != null && outcomeFile != null) {
+      try {
+        outcomes.write(new File(outcomeFile));
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot write outcome file '%s': %s", outcomeFile, e.getMessage()));
+      }
+    }
+
+    if (stats) {
+      if (strategy instanceof MyGuessingStrategy)
+        System.err.println("Pattern cache: " + ((MyGuessingStrategy)strategy).cacheStats());
+      if (outcomes != null)
+        System.err.println("Outcome cache: " + outcomes);
+    }
+    if (Metrics.ENABLED)
+      Metrics.dump(System.err);
+    if (Trace.ENABLED) {
+      Trace.close();
+      if (stats)
+        System.err.println("Trace stalls: " + Trace.stalls());
+    }
+  }
+
+  /**
+   * @return The checksum of a dictionary file, see IndexFile.checksum, or null if the file
+   * can't be read, in which case nothing saved of the dictionary is trusted. It's read once
+   * and given to the loaders below.
+   */
+  static Long checksum(String file) {
+    try {
+      return IndexFile.checksum(new File(file));
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Make the strategy chosen by hangman_strategy, see loadStrategy(String, Long, List, long, String).
+   */
+  static GuessingStrategy loadStrategy(String file, Long checksum, List<WordIndex> indexes, long cache) {
+    return loadStrategy(file, checksum, indexes, cache, Strategies.chosen());
+  }
+
+  /**
+   * Make a strategy by its name over the indexes of the dictionary, and give the default
+   * strategy the opening book of the dictionary if there's an up-to-date one, which holds
+   * its guesses. Exit if there's no strategy of the name.
+   * @param file The dictionary file
+   * @param checksum The checksum of the dictionary, see checksum
+   * @param indexes The indexes of the dictionary, see loadIndexes
+   */
+  static GuessingStrategy loadStrategy(String file, Long checksum, List<WordIndex> indexes, long cache, String name) {
+    GuessingStrategy strategy = null;
+    try {
+      strategy = Strategies.create(name, indexes, cache);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(-1);
+    }
+
+    File book = new File(OpeningBook.path(file));
+    if (name.equals(Strategies.DEFAULT) && strategy instanceof MyGuessingStrategy && checksum != null
+        && book.exists()) {
+      try {
+        OpeningBook opening = OpeningBook.read(book, checksum);
+        if (opening != null)
+          ((MyGuessingStrategy)strategy).setOpeningBook(opening);
+        else
+          System.err.println(String.format("Opening book '%s' is out of date, ignored.", book));
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot read opening book '%s', ignored.", book));
+      }
+    }
+    return strategy;
+  }
+
+  /**
+   * Read the indexes of words by length from the precompiled index of the dictionary if
+   * it's up to date, otherwise make them from the dictionary itself. The index of each length
+   * is made as the hangman_build environment variable tells:
+   *   eager       all of them now, the lengths in parallel (default)
+   *   lazy        each when a word of its length is first played or looked up
+   *   background  each on the first use, or before that in the background
+   * @param checksum The checksum of the dictionary, see checksum
+   */
+  static List<WordIndex> loadIndexes(String file, Long checksum) {
+    LazyIndexes indexes = null;
+    File index = new File(IndexFile.path(file));
+    if (checksum != null && index.exists()) {
+      try {
+        indexes = IndexFile.read(index, checksum);
+        if (indexes == null)
+          System.err.println(String.format("Index file '%s' is out of date, indexing '%s' instead.", index, file));
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot read index file '%s', indexing '%s' instead.", index, file));
+      }
+    }
+    if (indexes == null)
+      indexes = MyGuessingStrategy.indexLazily(readDictionary(file));
+
+    String build = System.getenv("hangman_build");
+    if ("lazy".equals(build))
+      return indexes;
+    if ("background".equals(build))
+      return indexes.warm();
+    return indexes.buildAll();
+  }
+
+  /**
+   * Make the cache of the outcomes of a strategy, with the outcomes saved in a file if
+   * there's one of the same dictionary and strategy.
+   * @param checksum The checksum of the dictionary, see checksum
+   * @param outcomeFile The file of the saved outcomes, or null
+   */
+  private static OutcomeCache loadOutcomes(GuessingStrategy strategy, Long checksum, long size, String outcomeFile) {
+    String fingerprint = checksum + "/" + Strategies.fingerprint(Strategies.chosen());
+    if (checksum == null)
+      outcomeFile = null; //Without the checksum, saved outcomes can't be trusted
+    OutcomeCache outcomes = new OutcomeCache(strategy, fingerprint, size);
+
+    if (outcomeFile != null && new File(outcomeFile).exists()) {
+      try {
+        if (outcomes.read(new File(outcomeFile)) < 0)
+          System.err.println(String.format("Outcome file '%s' is out of date, ignored.", outcomeFile));
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot read outcome file '%s', ignored.", outcomeFile));
+      }
+    }
+    return outcomes;
+  }
+
+  /**
+   * @return true if the standard input is a terminal. There's a console only if both the
+   * input and the output are terminals, so without one the input is looked at by itself
+   * where the system tells what it is, e.g. /dev/stdin of Linux; elsewhere it's taken as
+   * not a terminal, as when the output is redirected.
+   */
+  private static boolean isTerminal() {
+    if (System.console() != null)
+      return true;
+    try {
+      int mode = (Integer)Files.getAttribute(Paths.get("/dev/stdin"), "unix:mode");
+      return (mode & 0170000) == 0020000; //A character device
+    }
+    catch (IOException e) {
+      return false;
+    }
+    catch (RuntimeException e) { //No such attribute on the system
+      return false;
+    }
+  }
+
+  /**
+   * Read in dictionary file, or exit if it can't be read.
+   * @return The words in upper case
+   */
+  static Set<String> readDictionary(String file) {
+    Set<String> dict = new HashSet<String>();
+    try {
+      WordReader.readWords(new File(file), dict);
     }
     catch (IOException e) {
       System.err.println(String.format("Cannot open dictionary file '%s' for reading!", file));
       System.exit(-1);
     }
+    return dict;
+  }
 
+  /**
+   * Play the input words one by one.
+   * @param indexes The indexes of the dictionary, which the input words must be in
+   * @param interactive true to prompt for the words and write each result at once
+   */
+  private static void run(GuessingStrategy strategy, List<WordIndex> indexes, int guesses, boolean debug,
+      OutcomeCache outcomes, Writer out, boolean interactive) throws IOException {
     // Run game
-    MyGuessingStrategy strategy = new MyGuessingStrategy(dict);
     double totalScore = 0;
     int total = 0;
 
-    Scanner s = new Scanner(System.in);
-    System.err.println("Enter a word:");
-    while (s.hasNext()) {
-      String word = s.next();
-      if (word.isEmpty())
-        break;
-
-      word = word.toUpperCase();
-      if (!dict.contains(word)) {
+    WordReader in = new WordReader(System.in);
+    GuessResult guess = new GuessResult();
+    if (interactive)
+      System.err.println("Enter a word:");
+    String word;
+    while ((word = readWord(in)) != null) {
+      if (!WordIndex.contains(indexes, word)) {
         System.err.println(String.format("Word '%s' is not in dicitionary!", word));
         continue;
       }
@@ -61,16 +309,117 @@ class Main {
       if (debug)
         System.err.println(String.format("New Game [%s]", word));
 
-      HangmanGame game = new HangmanGame(word, guesses);
-      int score = game.run(strategy, debug);
+      int score;
+      if (outcomes != null)
+        score = outcomes.get(word, guesses).score;
+      else
+        score = new HangmanGame(word, guesses).run(strategy, debug, guess);
       totalScore += score;
       total++;
-      System.out.println(String.format("%s = %d", word, score));
-      System.err.println("Enter a word:");
+      printResult(out, word, score, interactive);
+      if (interactive)
+        System.err.println("Enter a word:");
+    }
+
+    printSummary(out, totalScore, total);
+  }
+
+  /**
+   * Play the input words on a pool of worker threads. All workers share one strategy
+   * instance. Results are printed in input order as soon as all the games before them
+   * are done, so the output is the same as a sequential run.
+   */
+  private static void runParallel(final GuessingStrategy strategy, List<WordIndex> indexes, final int guesses,
+      int threads, final OutcomeCache outcomes, Writer out, boolean interactive) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    // Bound the games in flight, so a huge input doesn't pile up in memory.
+    int window = threads * 64;
+    Queue<String> words = new LinkedList<String>();
+    Queue<Future<Integer>> scores = new LinkedList<Future<Integer>>();
+    double totalScore = 0;
+    int total = 0;
+
+    try {
+      WordReader in = new WordReader(System.in);
+      String word;
+      while ((word = readWord(in)) != null) {
+        if (!WordIndex.contains(indexes, word)) {
+          System.err.println(String.format("Word '%s' is not in dicitionary!", word));
+          continue;
+        }
+
+        final String secret = word;
+        words.add(secret);
+        scores.add(pool.submit(new Callable<Integer>() {
+          public Integer call() {
+            if (outcomes != null)
+              return outcomes.get(secret, guesses).score;
+            return new HangmanGame(secret, guesses).run(strategy, false);
+          }
+        }));
+
+        if (scores.size() >= window) {
+          int score = scores.remove().get();
+          totalScore += score;
+          total++;
+          printResult(out, words.remove(), score, interactive);
+        }
+      }
+
+      while (!scores.isEmpty()) {
+        int score = scores.remove().get();
+        totalScore += score;
+        total++;
+        printResult(out, words.remove(), score, interactive);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.exit(-1);
     }
+    catch (ExecutionException e) {
+      System.err.println(String.format("Game failed: %s", e.getCause()));
+      System.exit(-1);
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    printSummary(out, totalScore, total);
+  }
+
+  /**
+   * Write the result of a game as "WORD = score" without formatting, which adds up over
+   * many words.
+   * @param flush true to flush the result at once
+   */
+  private static void printResult(Writer out, String word, int score, boolean flush) throws IOException {
+    out.write(word);
+    out.write(" = ");
+    out.write(Integer.toString(score));
+    out.write(System.lineSeparator());
+    if (flush)
+      out.flush();
+  }
 
-    if (total > 0)
-      System.out.println(String.format("-----------------------------\nAVG: %g\nNUM: %d\nTOTAL: %g\n",
+  /**
+   * @return The next input word in upper case, or null at the end of the input.
+   */
+  private static String readWord(WordReader in) {
+    try {
+      return in.next();
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot read input: %s", e.getMessage()));
+      return null;
+    }
+  }
+
+  private static void printSummary(Writer out, double totalScore, int total) throws IOException {
+    if (total > 0) {
+      out.write(String.format("-----------------------------\nAVG: %g\nNUM: %d\nTOTAL: %g\n",
         totalScore / total, total, totalScore));
+      out.write(System.lineSeparator());
+    }
   }
 }
@@ -0,0 +1,139 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the hot paths of MyGuessingStrategy and HangmanGame.
+ * They are only collected if the hangman_metrics environment variable is set. ENABLED is
+ * a constant, so when it's false the JIT drops the instrumentation entirely, and the
+ * clock is not even read.
+ * When enabled, the metrics are also served through JMX as "hangman:type=Metrics".
+ */
+class Metrics implements MetricsMBean {
+  public static final boolean ENABLED = System.getenv("hangman_metrics") != null;
+
+  /**
+   * How nextGuess found the WordSet of a turn: guesses is all of the calls, of which
+   * bookHits are answered by the opening book, rootHits use an all-blank WordSet and
+   * cacheHits a derived WordSet already made. The others make a new WordSet.
+   */
+  public static final LongAdder guesses = new LongAdder();
+  public static final LongAdder bookHits = new LongAdder();
+  public static final LongAdder rootHits = new LongAdder();
+  public static final LongAdder cacheHits = new LongAdder();
+
+  /**
+   * New WordSets made, of which incrementalRefinements are refined from the WordSet of
+   * the previous turn instead of the index.
+   */
+  public static final LongAdder refinements = new LongAdder();
+  public static final LongAdder incrementalRefinements = new LongAdder();
+
+  public static final Histogram guessNanos = new Histogram();
+  public static final Histogram refineNanos = new Histogram();
+
+  /**
+   * Number of the words a new WordSet is filtered from
+   */
+  public static final Histogram parentSize = new Histogram();
+  public static final Histogram makeOrderNanos = new Histogram();
+  public static final Histogram finalBlowNanos = new Histogram();
+  public static final Histogram gameNanos = new Histogram();
+  public static final Histogram gameGuesses = new Histogram();
+
+  private static final Metrics instance = new Metrics();
+
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName("hangman:type=Metrics"));
+      }
+      catch (JMException e) {
+        System.err.println(String.format("Cannot register metrics to JMX: %s", e.getMessage()));
+      }
+    }
+  }
+
+  private Metrics() {
+  }
+
+  /**
+   * Print all the metrics.
+   */
+  public static void dump(PrintStream out) {
+    out.print(instance.getReport());
+    out.flush();
+  }
+
+  public long getGuesses() {
+    return guesses.sum();
+  }
+
+  public long getBookHits() {
+    return bookHits.sum();
+  }
+
+  public long getRootHits() {
+    return rootHits.sum();
+  }
+
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  public long getRefinements() {
+    return refinements.sum();
+  }
+
+  public long getIncrementalRefinements() {
+    return incrementalRefinements.sum();
+  }
+
+  public long getGames() {
+    return gameGuesses.count();
+  }
+
+  public double getMeanGuessNanos() {
+    return guessNanos.mean();
+  }
+
+  public long getP99GuessNanos() {
+    return guessNanos.percentile(99);
+  }
+
+  public double getMeanRefineNanos() {
+    return refineNanos.mean();
+  }
+
+  public double getMeanParentSize() {
+    return parentSize.mean();
+  }
+
+  public double getMeanGuessesPerGame() {
+    return gameGuesses.mean();
+  }
+
+  public String getReport() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("guesses=%d; bookHits=%d; rootHits=%d; cacheHits=%d; refinements=%d; incremental=%d%n",
+      guesses.sum(), bookHits.sum(), rootHits.sum(), cacheHits.sum(), refinements.sum(), incrementalRefinements.sum()));
+    report.append(String.format("nextGuess ns:   %s%n", guessNanos));
+    report.append(String.format("refine ns:      %s%n", refineNanos));
+    report.append(String.format("parent words:   %s%n", parentSize));
+    report.append(String.format("makeOrder ns:   %s%n", makeOrderNanos));
+    report.append(String.format("finalBlow ns:   %s%n", finalBlowNanos));
+    report.append(String.format("game ns:        %s%n", gameNanos));
+    report.append(String.format("game guesses:   %s%n", gameGuesses));
+    return report.toString();
+  }
+
+  public void reset() {
+    for (LongAdder counter : new LongAdder[] {guesses, bookHits, rootHits, cacheHits, refinements, incrementalRefinements})
+      counter.reset();
+    for (Histogram histogram : new Histogram[] {guessNanos, refineNanos, parentSize, makeOrderNanos,
+        finalBlowNanos, gameNanos, gameGuesses})
+      histogram.reset();
+  }
+}
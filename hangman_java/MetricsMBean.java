@@ -0,0 +1,25 @@
+/**
+ * The JMX view of Metrics, registered as "hangman:type=Metrics".
+ */
+public interface MetricsMBean {
+  long getGuesses();
+  long getBookHits();
+  long getRootHits();
+  long getCacheHits();
+  long getRefinements();
+  long getIncrementalRefinements();
+  long getGames();
+
+  double getMeanGuessNanos();
+  long getP99GuessNanos();
+  double getMeanRefineNanos();
+  double getMeanParentSize();
+  double getMeanGuessesPerGame();
+
+  /**
+   * @return All the metrics as text, as Metrics::dump prints them
+   */
+  String getReport();
+
+  void reset();
+}
@@ -1,12 +1,25 @@
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.HashMap;
 import java.util.Iterator;
-
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A guessing strategy based on letter statistics of the words matching the current pattern.
+ * The strategy is thread-safe: one instance can serve many games being played at the same time.
+ * Its words can be changed while games are played, see update and reload.
+ */
 class MyGuessingStrategy implements GuessingStrategy {
   /**
    * A WordSet is a set of words all having the same pattern.
@@ -14,353 +27,961 @@ class MyGuessingStrategy implements GuessingStrategy {
    * A WordSet also contains statistical info about the words in it, such as
    * letter occurrence times.
    */
-  private static class WordSet {
-
-    private static class LetterStat {
-      public int frequency = 0;  //How many times the letter appears in a WordSet
-      public int wordCount = 0;  //How many words contains the letter in a WordSet
-    }
+  private class WordSet {
 
-    //A helper class to make order.
-    private static class LetterStatHelper implements Comparable<LetterStatHelper> {
-      public char ch = 0;
-      public int frequency = 0;
-      public int wordCount = 0;
+    /**
+     * The index of the words of the set, which also numbers their letters.
+     */
+    private final WordIndex index;
 
-      public LetterStatHelper(char ch, LetterStat stat) {
-        this.ch = ch;
-        this.frequency = stat.frequency;
-        this.wordCount = stat.wordCount;
-      }
+    /**
+     * Given a letter code C, frequency[C] is how many times the letter appears in a WordSet
+     * and wordCount[C] is how many words contains the letter in a WordSet.
+     */
+    private final int[] frequency;
+    private final int[] wordCount;
 
-      public int compareTo(LetterStatHelper rhs) {
-        if (this.frequency > rhs.frequency)
-          return -1;
+    /**
+     * Letter codes in descendent order on frequency. It's made lazily and may be made by more
+     * than one thread at the same time, which is harmless since they all make the same order.
+     */
+    private volatile byte[] order = null;
 
-        if (this.frequency == rhs.frequency)
-          return this.wordCount - rhs.wordCount;
+    /**
+     * Ids of the words in the set, in ascending order.
+     */
+    private final int[] ids;
 
-        return 1;
+    /**
+     * Make a word set of some words of the index and collect the letter statistical info.
+     * Letters in the excluded set are not counted for the statistical info.
+     */
+    public WordSet(WordIndex index, int[] ids, long excluded) {
+      this.index = index;
+      this.ids = ids;
+      this.frequency = new int[index.alphabetSize()];
+      this.wordCount = new int[index.alphabetSize()];
+
+      int length = index.length();
+      for (int id : ids) {
+        for (int i = 0; i < length; i++) {
+          int code = index.code(id, i);
+          if ((excluded & (1L << code)) == 0)
+            this.frequency[code]++;
+        }
+        for (long letters = index.mask(id) & ~excluded; letters != 0; letters &= letters - 1) {
+          this.wordCount[Long.numberOfTrailingZeros(letters)]++;
+        }
       }
     }
 
     /**
-     * A map of letters to their statistical info.
+     * Make a word set of all the words of the index, whose statistical info is already in the index.
      */
-    private Map<Character, LetterStat> stat = new HashMap<Character, LetterStat>();
+    public WordSet(WordIndex index) {
+      this.index = index;
+      this.ids = new int[index.size()];
+      for (int id = 0; id < this.ids.length; id++) {
+        this.ids[id] = id;
+      }
+      this.frequency = index.frequency();
+      this.wordCount = index.wordCount();
+    }
 
     /**
-     * Letters in descendent order on frequency
+     * Move a word set to an index made by WordIndex::edit of its index, which has all of its
+     * words, so its statistical info and order stay the same.
+     * @param remap The ids in the new index of the words of the old one, or null if they're the same
      */
-    private char[] order = null;
+    public WordSet(WordSet set, WordIndex index, int[] remap) {
+      this.index = index;
+      if (remap == null) {
+        this.ids = set.ids;
+      }
+      else {
+        this.ids = new int[set.ids.length];
+        for (int i = 0; i < this.ids.length; i++)
+          this.ids[i] = remap[set.ids[i]];
+      }
+      //Letters new to the index follow the old ones, and none of them is in the set
+      boolean same = set.index.alphabetSize() == index.alphabetSize();
+      this.frequency = same ? set.frequency : Arrays.copyOf(set.frequency, index.alphabetSize());
+      this.wordCount = same ? set.wordCount : Arrays.copyOf(set.wordCount, index.alphabetSize());
+      this.order = set.order;
+    }
 
-    /**
-     * Words in the set.
-     */
-    List<String> words = new ArrayList<String>();
+    public WordIndex index() {
+      return index;
+    }
 
     public int wordCount() {
-      return words.size();
+      return ids.length;
     }
 
-    public List<String> words() {
-      return Collections.unmodifiableList(words);
+    /**
+     * @return The id of the i-th word in the set
+     */
+    public int id(int i) {
+      return ids[i];
     }
 
     /**
-     * Insert a new word to the word set, and update the letter statistical info.
-     * Letters in the excluded set are not counted for the statistical info.
+     * @return The ids of the words of the set which match a pattern and have none of the
+     * wrong letters. The words of the set must have matched an earlier pattern of the same game.
+     * @param patternChars The codes of the letters revealed in the pattern as a mask
      */
-    public void update(String word, Set<Character> excluded) {
-      Set<Character> parsed = new HashSet<Character>();
-      int i;
-      for (i = 0; i < word.length(); i++) {
-        char ch = word.charAt(i);
-        if (excluded == null || !excluded.contains(ch)) {
-          LetterStat stat = this.stat.get(ch);
-          if (stat != null) {
-            stat.frequency++;
-            if (parsed.add(ch)) {
-              stat.wordCount++;
-            }
-          }
-          else {
-            stat = new LetterStat();
-            stat.frequency++;
-            stat.wordCount++;
-            this.stat.put(ch, stat);
-            parsed.add(ch);
-          }
+    public int[] filter(CharSequence pattern, long patternChars, long wrong) {
+      int length = index.length();
+      int[] codes = new int[length]; //Code of the letter at each position, -1 for a blank
+      for (int i = 0; i < length; i++) {
+        char ch = pattern.charAt(i);
+        codes[i] = ch == HangmanGame.MYSTERY_LETTER ? -1 : index.code(ch);
+      }
+
+      int[] ids = new int[this.ids.length];
+      int size = 0;
+      for (int id : this.ids) {
+        if ((index.mask(id) & wrong) != 0)
+          continue;
+        boolean match = true;
+        for (int i = 0; i < length && match; i++) {
+          int code = index.code(id, i);
+          match = codes[i] < 0 ? (patternChars & (1L << code)) == 0 : code == codes[i];
         }
+        if (match)
+          ids[size++] = id;
       }
-      this.words.add(word);
+      return Arrays.copyOf(ids, size);
     }
 
     /**
      * Give a suggest of the most probable letter not in the excluded letter set.
+     * @return The code of the letter, or -1 if all the letters of the words are excluded
      */
-    public char suggest(Set<Character> excluded) {
-      if (this.order == null)
-        makeOrder();
-      for (int i = 0; i < this.order.length; i++) {
-        if (!excluded.contains(this.order[i])) {
-          return this.order[i];
+    public int suggest(long excluded) {
+      byte[] order = order();
+      for (int i = 0; i < order.length; i++) {
+        if ((excluded & (1L << order[i])) == 0) {
+          return order[i];
         }
       }
-      assert(false);
-      return '\0';
+      return -1;
     }
 
     /**
-     * Sort letters in a word set on their frquencies in descending order.
+     * @return Codes of the letters in the words, in the order to suggest them
      */
-    private void makeOrder() {
-      List<LetterStatHelper> tmp = new ArrayList<LetterStatHelper>(this.stat.size());
-      for (Map.Entry<Character, LetterStat> entry : this.stat.entrySet()) {
-        tmp.add(new LetterStatHelper(entry.getKey(), entry.getValue()));
+    public byte[] order() {
+      byte[] order = this.order;
+      if (order == null) {
+        if (Metrics.ENABLED) {
+          long start = System.nanoTime();
+          order = makeOrder();
+          Metrics.makeOrderNanos.record(System.nanoTime() - start);
+        }
+        else {
+          order = makeOrder();
+        }
+      }
+      return order;
+    }
+
+    /**
+     * Sort letters in a word set on their scores given by letterScores in descending order,
+     * if any, then on their frquencies in descending order. Letters of the same frequency are
+     * sorted on the number of words containing them in ascending order, then as they were when
+     * the statistics were kept in a HashMap of Character, see before.
+     */
+    private byte[] makeOrder() {
+      double[] scores = letterScores(this.index, this.ids, this.frequency, this.wordCount);
+      int size = 0;
+      for (int code = 0; code < this.frequency.length; code++) {
+        if (this.frequency[code] > 0)
+          size++;
+      }
+
+      //Number of buckets a HashMap of the letters would have
+      int buckets = 16;
+      while (size > buckets * 3 / 4)
+        buckets <<= 1;
+
+      //Insertion sort of the codes, which are no more than 64, in the order array itself
+      byte[] order = new byte[size];
+      size = 0;
+      for (int code = 0; code < this.frequency.length; code++) {
+        if (this.frequency[code] == 0)
+          continue;
+        int i = size++;
+        while (i > 0 && before(scores, code, order[i - 1], buckets)) {
+          order[i] = order[i - 1];
+          i--;
+        }
+        order[i] = (byte)code;
       }
-      Collections.sort(tmp);
-      this.order = new char[tmp.size()];
-      for (int i = 0; i < tmp.size(); i++) {
-        this.order[i] = tmp.get(i).ch;
+      this.order = order;
+      return order;
+    }
+
+    /**
+     * Return true if letter code a comes before letter code b in the order. Letters tied on
+     * the statistics come in the order a HashMap of Character with the given number of buckets
+     * iterates them: on their buckets, then on where they first appear in the words of the set.
+     */
+    private boolean before(double[] scores, int a, int b, int buckets) {
+      if (scores != null && scores[a] != scores[b])
+        return scores[a] > scores[b];
+      if (this.frequency[a] != this.frequency[b])
+        return this.frequency[a] > this.frequency[b];
+      if (this.wordCount[a] != this.wordCount[b])
+        return this.wordCount[a] < this.wordCount[b];
+      int bucketA = this.index.letter(a) & (buckets - 1);
+      int bucketB = this.index.letter(b) & (buckets - 1);
+      if (bucketA != bucketB)
+        return bucketA < bucketB;
+      int length = this.index.length();
+      for (int id : this.ids) {
+        for (int i = 0; i < length; i++) {
+          int code = this.index.code(id, i);
+          if (code == a)
+            return true;
+          if (code == b)
+            return false;
+        }
       }
+      return a < b;
     }
 
   };
 
   /**
-   * An array of maps of patterns to their WordSets.
-   * Given a pattern P, its WordSet can be retrieved by patternMapGroup[P.length - 1][P]
+   * Version of the guesses the strategy gives, to be bumped whenever a change makes it give
+   * different guesses, see Strategies.Factory.version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Default maximum number of words held by all the derived WordSets together.
+   */
+  public static final long DEFAULT_CACHE_WEIGHT = 1L << 22;
+
+  /**
+   * An array of the WordSets of all-blank patterns, which are never evicted. Given a pattern
+   * P of all blanks, its WordSet is made by roots[P.length - 1] the first time it's asked for,
+   * along with the index of the length if that's made lazily, and it's null if there's no
+   * word of the length; the index of the words that may match a pattern of the length is its
+   * index. The list is never changed but replaced as a whole when the words change, so a
+   * thread reading it once sees the indexes of the same words. A WordSet is never changed
+   * after it's made, so it can be read by any thread without locking.
+   */
+  private volatile List<FutureTask<WordSet>> roots;
+
+  /**
+   * Given a length L, the number of the words of the length is sizes[L - 1], which is kept
+   * without making the roots. It's only read and replaced holding updateLock.
+   */
+  private int[] sizes;
+
+  /**
+   * WordSets of the patterns with some letters revealed or wrongly guessed, keyed by both.
+   * They are made on demand from the WordSet of the previous turn of a game, or with the
+   * help of the indexes, and evicted when they hold too many words all together.
+   * A WordSet whose index is not that of its root any more is made of old words, and is
+   * made again when found.
+   */
+  private final BoundedCache<PatternKey, WordSet> derived;
+
+  /**
+   * The guesses of the first turns of games, looked up before the WordSets, or null.
+   */
+  private volatile OpeningBook book = null;
+
+  /**
+   * Held while the words are changed, so changes are made one at a time
+   */
+  private final Object updateLock = new Object();
+
+  /**
+   * The current turn of the game a thread is playing. A game is played by one thread at
+   * a time, so the WordSet of its previous turn can be refined to make that of the next.
+   * It's cleared when the game is over, see gameOver, which may be done by another thread.
+   * Other threads only ever clear it, and the owner drops the WordSet whenever it plays
+   * another game than the turn's, so the WordSet used is always of the game played.
+   */
+  private static class Turn {
+    /**
+     * A key to look up the pattern of the game
+     */
+    final PatternKey pattern = new PatternKey();
+
+    volatile HangmanGame game = null;
+
+    /**
+     * WordSet of the game's last turn looked up, which contains all the words of its next turns
+     */
+    volatile WordSet wordset = null;
+  }
+
+  /**
+   * The turns of all the threads, so a game over can be let go of by any thread
    */
-  private List<Map<String, WordSet > > patternMapGroup = new ArrayList<Map<String, WordSet > >();
+  private final Set<Turn> allTurns = Collections.newSetFromMap(new ConcurrentHashMap<Turn, Boolean>());
+
+  private final ThreadLocal<Turn> turns = new ThreadLocal<Turn>() {
+    @Override
+    protected Turn initialValue() {
+      Turn turn = new Turn();
+      allTurns.add(turn);
+      return turn;
+    }
+  };
 
   public MyGuessingStrategy(Set<String> dict) {
-    List<String> patterns = new ArrayList<String>(20);
+    this(dict, DEFAULT_CACHE_WEIGHT);
+  }
+
+  /**
+   * @param cacheWeight The maximum number of words held by the derived WordSets together,
+   * zero or negative for no limit.
+   */
+  public MyGuessingStrategy(Set<String> dict, long cacheWeight) {
+    this(index(dict), cacheWeight);
+  }
+
+  /**
+   * @param indexes Indexes of words by length, with null for the lengths of no words. Each
+   * is only asked for when a word of its length is first looked up, so LazyIndexes only
+   * makes those of the lengths played.
+   * @param cacheWeight The maximum number of words held by the derived WordSets together,
+   * zero or negative for no limit.
+   */
+  public MyGuessingStrategy(List<WordIndex> indexes, long cacheWeight) {
+    this.derived = new BoundedCache<PatternKey, WordSet>(cacheWeight) {
+      @Override
+      protected WordSet load(PatternKey pattern) {
+        return newWordSet(pattern, pattern.wrong(), null);
+      }
+
+      @Override
+      protected int weigh(WordSet set) {
+        return set.wordCount();
+      }
+    };
+
+    this.roots = roots(indexes);
+    this.sizes = LazyIndexes.wordCounts(indexes);
+  }
+
+  /**
+   * @return Makers of the WordSets of all the words of indexes by length
+   */
+  private List<FutureTask<WordSet>> roots(final List<WordIndex> indexes) {
+    List<FutureTask<WordSet>> roots = new ArrayList<FutureTask<WordSet>>(indexes.size());
+    for (int i = 0; i < indexes.size(); i++) {
+      final int length = i + 1;
+      roots.add(new FutureTask<WordSet>(new Callable<WordSet>() {
+        public WordSet call() {
+          WordIndex index = indexes.get(length - 1);
+          return index != null ? new WordSet(index) : null;
+        }
+      }));
+    }
+    return Collections.unmodifiableList(roots);
+  }
+
+  /**
+   * @return A maker of a WordSet already made
+   */
+  private static FutureTask<WordSet> made(final WordSet set) {
+    FutureTask<WordSet> task = new FutureTask<WordSet>(new Callable<WordSet>() {
+      public WordSet call() {
+        return set;
+      }
+    });
+    task.run();
+    return task;
+  }
+
+  /**
+   * Group the words by length, then index each group, the groups in parallel.
+   */
+  static List<WordIndex> index(Set<String> dict) {
+    return indexLazily(dict).buildAll();
+  }
+
+  /**
+   * Group the words by length, and leave each group to be indexed when it's asked for.
+   */
+  static LazyIndexes indexLazily(Set<String> dict) {
+    List<List<String>> groups = new ArrayList<List<String>>(20);
     Iterator<String> it = dict.iterator();
     while (it.hasNext()) {
       String s = it.next().toUpperCase();
       int len = s.length();
-      if (patterns.size() < len) {
-        for (int i = patterns.size(); i < len; i++)
-          patterns.add(null);
+      if (groups.size() < len) {
+        for (int i = groups.size(); i < len; i++)
+          groups.add(null);
       }
-      String p = patterns.get(len - 1);
-      if (p == null) {
-        char[] pattern = new char[len];
-        for (int i = 0; i < len; i++) {
-          pattern[i] = HangmanGame.MYSTERY_LETTER;
-        }
-        p = new String(pattern);
-        patterns.set(len - 1, p);
+      List<String> group = groups.get(len - 1);
+      if (group == null) {
+        group = new ArrayList<String>();
+        groups.set(len - 1, group);
       }
-      insert(p, s);
+      group.add(s);
+    }
+
+    List<Callable<WordIndex>> makers = new ArrayList<Callable<WordIndex>>(groups.size());
+    int[] sizes = new int[groups.size()];
+    for (final List<String> group : groups) {
+      if (group != null)
+        sizes[makers.size()] = group.size();
+      makers.add(group == null ? null : new Callable<WordIndex>() {
+        public WordIndex call() {
+          return new WordIndex(group.toArray(new String[group.size()]));
+        }
+      });
     }
+    return new LazyIndexes(makers, sizes);
   }
 
   public Guess nextGuess(HangmanGame game) {
-    String pattern = game.getGuessedSoFar(); //This line clearly explains what a "pattern" is.
-    WordSet wordset = this.patternMapGroup.get(pattern.length() - 1).get(pattern);
-    if (wordset == null) { //If no statistical info collected for the pattern, collect it now.
-      wordset = newWordSet(pattern);
+    GuessResult result = new GuessResult();
+    nextGuess(game, result);
+    return result.toGuess();
+  }
+
+  /**
+   * Write the next guess to a reusable result. Unless a new pattern is reached, no
+   * object is made.
+   */
+  @Override
+  public void nextGuess(HangmanGame game, GuessResult result) {
+    if (Metrics.ENABLED) {
+      long start = System.nanoTime();
+      guess(game, result);
+      Metrics.guessNanos.record(System.nanoTime() - start);
+      Metrics.guesses.increment();
     }
-    String next = suggest(pattern, wordset, game);
-    if (next.length() == 1) {
-      return new GuessLetter(next.charAt(0));
+    else {
+      guess(game, result);
+    }
+  }
+
+  private void guess(HangmanGame game, GuessResult result) {
+    //A pattern is what HangmanGame::getGuessedSoFar returns, e.g. "AB-A--"
+    int length = game.getSecretWordLength();
+    WordSet root = root(this.roots, length);
+    if (root == null) { //Not a word of the dictionary
+      guessUnknown(null, game, result);
+      return;
+    }
+    WordIndex index = root.index();
+    Turn turn = this.turns.get();
+    PatternKey pattern = turn.pattern.set(game, wrongLetters(index, game));
+    if (turn.game != game) {
+      turn.game = game;
+      turn.wordset = null;
+    }
+
+    OpeningBook book = this.book;
+    if (book != null && game.numBlanks() > 1 && game.numWrongGuessesRemaining() > 0) {
+      char ch = book.guess(pattern, game);
+      if (ch != 0) {
+        if (Metrics.ENABLED)
+          Metrics.bookHits.increment();
+        result.setLetter(ch);
+        return;
+      }
+    }
+
+    WordSet wordset;
+    if (game.numBlanks() == length && pattern.wrong() == 0) {
+      wordset = root;
+      if (Metrics.ENABLED)
+        Metrics.rootHits.increment();
     }
     else {
-      return new GuessWord(next);
+      wordset = this.derived.getIfPresent(pattern);
+      if (wordset == null) //If no statistical info collected for the pattern, the cache collects it now.
+        wordset = this.derived.get(pattern.copy(), refiner(turn.wordset));
+      else if (Metrics.ENABLED)
+        Metrics.cacheHits.increment();
+      if (wordset.index() != index) { //Made of the words before a change
+        this.derived.remove(pattern, wordset);
+        wordset = this.derived.get(pattern.copy(), refiner(turn.wordset));
+      }
     }
+    turn.wordset = wordset;
+    suggest(pattern, wordset, game, result);
   }
 
   /**
-   * Insert a word and its pattern to patternMapGroup
+   * @param previous The WordSet of the previous turn of a game, or null if unknown
+   * @return A loader of the WordSets of the next turns of the game, made from the previous one
    */
-  private void insert(String pattern, String word) {
-    assert(pattern.length() == word.length());
+  private Function<PatternKey, WordSet> refiner(final WordSet previous) {
+    return new Function<PatternKey, WordSet>() {
+      public WordSet apply(PatternKey pattern) {
+        return newWordSet(pattern, pattern.wrong(), previous);
+      }
+    };
+  }
 
-    int len = pattern.length();
-    if (this.patternMapGroup.size() < len) { //Increase the list size if necessary
-      for (int i = this.patternMapGroup.size(); i < len; i++) {
-        this.patternMapGroup.add(new HashMap<String, WordSet>());
+  /**
+   * Let go of the WordSet of the last turn of a game, so neither the game nor the WordSet is
+   * kept alive by the thread which played it last. It's most likely the current thread.
+   */
+  @Override
+  public void gameOver(HangmanGame game) {
+    Turn turn = this.turns.get();
+    if (turn.game == game) {
+      turn.game = null;
+      turn.wordset = null;
+      return;
+    }
+    for (Turn other : this.allTurns) {
+      if (other.game == game) {
+        other.game = null;
+        other.wordset = null;
       }
     }
+  }
 
-    Map<String, WordSet > map = this.patternMapGroup.get(len - 1);
-    WordSet set = map.get(pattern);
-    if (set == null) {
-      set = new WordSet();
-      map.put(pattern, set);
-    }
-    set.update(word, null);
+  /**
+   * @return The WordSet of all the words of a length, or null if there's no such word
+   */
+  private static WordSet root(List<FutureTask<WordSet>> roots, int length) {
+    FutureTask<WordSet> root = length > 0 && length <= roots.size() ? roots.get(length - 1) : null;
+    return root != null ? LazyIndexes.join(root) : null;
   }
 
   /**
-   * Make a new WordSet to the pattern.
+   * Use an opening book for the first turns of games. It must be made of the same
+   * dictionary, and set before any game is played. It's dropped once the words change.
    */
-  private WordSet newWordSet(String pattern) {
-    int len = pattern.length();
-    Map<String, WordSet> map = this.patternMapGroup.get(len - 1);
-
-    //Find the smallest "parent" pattern collection
-    int i;
-    WordSet parentWordSet = null;
-    String parentPattern = null;
-    Set<Character> patternChars = new HashSet<Character>(); //e.g. given a pattern "AB-A--", patternChars is {'A', 'B'}
-    for (i = 0; i < len; i++) {
-      char ch = pattern.charAt(i);
-      if (ch != HangmanGame.MYSTERY_LETTER && patternChars.add(ch)) {
-        char[] copy = pattern.toCharArray();
-        copy[i] = HangmanGame.MYSTERY_LETTER;
-        for (int j = i + 1; j < len; j++) {
-          if (copy[j] == ch)
-            copy[j] = HangmanGame.MYSTERY_LETTER;
+  public void setOpeningBook(OpeningBook book) {
+    this.book = book;
+  }
+
+  /**
+   * @return true if the word is one of the words the strategy knows
+   */
+  public boolean contains(String word) {
+    WordSet root = root(this.roots, word.length());
+    return root != null && root.index().find(word) >= 0;
+  }
+
+  /**
+   * @return Indexes of words by length, with null for the lengths of no words. The list is
+   * that of the words at the moment, and isn't changed by update or reload. Like the
+   * strategy, it only makes an index not made yet when it's first asked for.
+   */
+  public List<WordIndex> indexes() {
+    List<FutureTask<WordSet>> roots = this.roots;
+    List<Callable<WordIndex>> makers = new ArrayList<Callable<WordIndex>>(roots.size());
+    for (final FutureTask<WordSet> root : roots) {
+      makers.add(root == null ? null : new Callable<WordIndex>() {
+        public WordIndex call() {
+          WordSet set = LazyIndexes.join(root);
+          return set != null ? set.index() : null;
         }
+      });
+    }
+    return new LazyIndexes(makers);
+  }
 
-        String p = new String(copy);
-        WordSet set = map.get(p);
-        if (set != null && (parentWordSet == null || parentWordSet.wordCount() > set.wordCount())) {
-          parentWordSet = set;
-          parentPattern = p;
+  /**
+   * Add some words and remove some others while games may be played. The index of each length
+   * changed is edited, keeping the ids of its words in the same order, and replaces the old
+   * one at once. Of the WordSets of the length cached, those whose pattern some of the words
+   * match are dropped, and the rest are moved to the new index as they are. Games being played
+   * go on with the words they meet: those of the new words when they look up a pattern, and
+   * those of the old words for patterns already looked up and not dropped yet. The opening
+   * book, if any, is dropped.
+   * @param added Words to add, in any case, those in the dictionary already are ignored
+   * @param removed Words to remove, in any case, those not in the dictionary are ignored
+   * @return The number of the words in the dictionary after the change
+   * @throws IllegalArgumentException If the words of a length would have more than
+   * WordIndex.MAX_ALPHABET_SIZE different letters, in which case nothing is changed
+   */
+  public int update(Collection<String> added, Collection<String> removed) {
+    Map<Integer, List<String>> adds = byLength(added);
+    Map<Integer, List<String>> removes = byLength(removed);
+    synchronized (this.updateLock) {
+      List<FutureTask<WordSet>> roots = new ArrayList<FutureTask<WordSet>>(this.roots);
+      int[] sizes = this.sizes;
+      final Map<Integer, WordIndex> olds = new HashMap<Integer, WordIndex>();
+      final Map<Integer, int[]> remaps = new HashMap<Integer, int[]>();
+      final Map<Integer, List<String>> changes = new HashMap<Integer, List<String>>();
+      for (int length : union(adds.keySet(), removes.keySet())) {
+        List<String> adding = adds.containsKey(length) ? adds.get(length) : Collections.<String>emptyList();
+        List<String> removing = removes.containsKey(length) ? removes.get(length) : Collections.<String>emptyList();
+        WordSet root = root(roots, length);
+        WordIndex index;
+        if (root != null) {
+          int[] remap = removing.isEmpty() ? null : new int[root.index().size()];
+          index = root.index().edit(adding, removing, remap);
+          if (index == root.index())
+            continue;
+          olds.put(length, root.index());
+          remaps.put(length, remap);
         }
+        else if (!adding.isEmpty()) {
+          index = new WordIndex(new LinkedHashSet<String>(adding).toArray(new String[0]));
+        }
+        else {
+          continue;
+        }
+        while (roots.size() < length)
+          roots.add(null);
+        roots.set(length - 1, made(new WordSet(index)));
+        if (sizes.length < length)
+          sizes = Arrays.copyOf(sizes, length);
+        else if (sizes == this.sizes)
+          sizes = sizes.clone();
+        sizes[length - 1] = index.size();
+        List<String> changed = new ArrayList<String>(adding);
+        changed.addAll(removing);
+        changes.put(length, changed);
       }
+      if (changes.isEmpty())
+        return size(this.sizes);
+
+      final List<FutureTask<WordSet>> updated = Collections.unmodifiableList(roots);
+      this.book = null;
+      this.roots = updated;
+      this.sizes = sizes;
+      this.derived.replaceAll(new BiFunction<PatternKey, WordSet, WordSet>() {
+        public WordSet apply(PatternKey pattern, WordSet set) {
+          int length = pattern.length();
+          WordSet root = root(updated, length);
+          if (root == null) //Made before a reload
+            return null;
+          WordIndex index = root.index();
+          if (set.index() == index || !changes.containsKey(length))
+            return set;
+          if (set.index() != olds.get(length))
+            return null; //Made of words older still
+          long revealed = index.mask(pattern);
+          for (String word : changes.get(length)) {
+            if (mayMatch(pattern, revealed, word, index))
+              return null;
+          }
+          return new WordSet(set, index, remaps.get(length));
+        }
+      });
+      return size(sizes);
+    }
+  }
+
+  /**
+   * Replace all the words at once, e.g. with those of a dictionary read again, while games
+   * may be played. All the WordSets cached are dropped, and so is the opening book, if any.
+   * @param indexes Indexes of words by length, with null for the lengths of no words.
+   */
+  public void reload(List<WordIndex> indexes) {
+    List<FutureTask<WordSet>> roots = roots(indexes);
+    int[] sizes = LazyIndexes.wordCounts(indexes);
+    synchronized (this.updateLock) {
+      this.book = null;
+      this.roots = roots;
+      this.sizes = sizes;
+      this.derived.replaceAll(new BiFunction<PatternKey, WordSet, WordSet>() {
+        public WordSet apply(PatternKey pattern, WordSet set) {
+          return null;
+        }
+      });
     }
-    assert(parentWordSet != null);
+  }
 
-    //Draw the new pattern collection and info through filtering the parent
-    WordSet newSet = new WordSet();
-    map.put(pattern, newSet);
-    for (String word : parentWordSet.words()) {
-      if (match(pattern, word, patternChars)) {
-        newSet.update(word, patternChars);
+  /**
+   * @return The words in upper case grouped by length
+   */
+  private static Map<Integer, List<String>> byLength(Collection<String> words) {
+    Map<Integer, List<String>> groups = new HashMap<Integer, List<String>>();
+    for (String word : words) {
+      if (word.isEmpty())
+        continue;
+      List<String> group = groups.get(word.length());
+      if (group == null) {
+        group = new ArrayList<String>();
+        groups.put(word.length(), group);
       }
+      group.add(word.toUpperCase());
+    }
+    return groups;
+  }
+
+  private static Set<Integer> union(Set<Integer> a, Set<Integer> b) {
+    Set<Integer> union = new TreeSet<Integer>(a);
+    union.addAll(b);
+    return union;
+  }
+
+  /**
+   * @return The number of the words of all lengths
+   */
+  private static int size(int[] sizes) {
+    int size = 0;
+    for (int n : sizes)
+      size += n;
+    return size;
+  }
+
+  /**
+   * Return true if a word may be one of the words of a pattern and its wrong letters, which
+   * are given as codes of an index: it has the letters revealed where they are revealed, and
+   * neither those letters in the blanks nor any wrong letter.
+   * @param revealed The codes of the letters revealed in the pattern as a mask
+   */
+  private static boolean mayMatch(PatternKey pattern, long revealed, String word, WordIndex index) {
+    for (int i = 0; i < word.length(); i++) {
+      char p = pattern.charAt(i);
+      if (p != HangmanGame.MYSTERY_LETTER && word.charAt(i) != p)
+        return false; //Mostly found out here, so the rest is only done for the few words left
+    }
+    if ((index.mask(word) & pattern.wrong()) != 0)
+      return false;
+    for (int i = 0; i < word.length(); i++) {
+      char p = pattern.charAt(i);
+      int code = index.code(word.charAt(i));
+      if (p != HangmanGame.MYSTERY_LETTER ? word.charAt(i) != p : code >= 0 && (revealed & (1L << code)) != 0)
+        return false;
     }
+    return true;
+  }
+
+  /**
+   * Score the letters of the words of a WordSet for choosing the letter to guess, the higher
+   * the better. This strategy goes by the letter frequencies alone, so it gives no scores.
+   * @param ids Ids of the words, in ascending order
+   * @param frequency Times each letter appears in the words, 0 for the letters excluded
+   * @param wordCount Number of the words containing each letter, 0 for the letters excluded
+   * @return Scores by letter code, or null to sort on frequencies alone
+   */
+  double[] letterScores(WordIndex index, int[] ids, int[] frequency, int[] wordCount) {
+    return null;
+  }
+
+  /**
+   * @return Statistics of the derived WordSet cache
+   */
+  public String cacheStats() {
+    return this.derived.toString();
+  }
+
+  /**
+   * Make the WordSet of a pattern with some letters revealed without caching it, so the
+   * cost of refining a pattern can be measured.
+   * @return The number of the words matching the pattern
+   */
+  int refine(CharSequence pattern) {
+    return newWordSet(pattern, 0, null).wordCount();
+  }
 
-    return newSet;
+  /**
+   * Make a new WordSet to the pattern and wrong letters. It's called by the derived cache, which
+   * makes sure each WordSet is made only once even if many games reach its pattern at the same time.
+   * @param wrong The codes of the wrong letters as a mask
+   * @param previous The WordSet of the previous turn of the game, or null if unknown
+   */
+  private WordSet newWordSet(CharSequence pattern, long wrong, WordSet previous) {
+    if (!Metrics.ENABLED)
+      return makeWordSet(pattern, wrong, previous);
+
+    long start = System.nanoTime();
+    WordSet wordset = makeWordSet(pattern, wrong, previous);
+    Metrics.refineNanos.record(System.nanoTime() - start);
+    Metrics.refinements.increment();
+    boolean incremental = previous != null && previous.index() == wordset.index();
+    if (incremental)
+      Metrics.incrementalRefinements.increment();
+    Metrics.parentSize.record(incremental ? previous.wordCount() : wordset.index().size());
+    return wordset;
+  }
+
+  private WordSet makeWordSet(CharSequence pattern, long wrong, WordSet previous) {
+    int len = pattern.length();
+
+    //Draw the new pattern collection and info from the words of the previous turn if any,
+    //otherwise from the words the index matches to the pattern
+    WordIndex index = root(this.roots, len).index();
+    long patternChars = index.mask(pattern); //e.g. given a pattern "AB-A--", patternChars is {'A', 'B'}
+    int[] ids;
+    if (previous != null && previous.index() == index) { //Not made of the words before a change
+      ids = previous.filter(pattern, patternChars, wrong);
+    }
+    else {
+      long[] set = index.filter(pattern);
+      if (wrong != 0)
+        index.removeLetters(set, wrong);
+      ids = WordIndex.ids(set);
+    }
+    return new WordSet(index, ids, patternChars);
   }
 
   /**
    * When we have a last chance to make a guess and there're more than one blanks
    * in a pattern, we do the final blow! The basic idea is to select a word, which
    * dosn't contain those wrong guessed letters while has the most probable
-   * letter given by a WordSet::suggest.
-   */
-  private String finalBlow(String pattern, WordSet wordset, Set<Character> wrongLetters) {
-    String guess = null;
-    List<String> candidates = new ArrayList<String>();
-    char ch = wordset.suggest(wrongLetters);
-
-    for (String word : wordset.words()) {
-      if (!hasAny(word, wrongLetters)) {
-        candidates.add(word);
-        if (word.indexOf(ch) != -1) {
-          guess = word;
+   * letter given by a WordSet::suggest, or failing that the next most probable one, and so on.
+   * It's done in one pass over the words: the first word having the letter of the highest
+   * rank in the order of the WordSet is taken, and the search ends once a word has the first.
+   * @return The id of the word
+   */
+  private int finalBlow(WordSet wordset, long wrongLetters) {
+    WordIndex index = wordset.index();
+    byte[] order = wordset.order();
+    int guess = -1;
+    int best = order.length; //Rank of the letter of the guess in the order
+
+    for (int i = 0; i < wordset.wordCount() && best > 0; i++) {
+      int id = wordset.id(i);
+      long letters = index.mask(id);
+      if ((letters & wrongLetters) != 0)
+        continue;
+      //A word without wrong letters can't have a wrong letter of the order either
+      for (int k = 0; k < best; k++) {
+        if ((letters & (1L << order[k])) != 0) {
+          best = k;
+          guess = id;
           break;
         }
       }
     }
 
-    if (guess == null) {
-      Set<Character> excluded = new HashSet<Character>(wrongLetters);
-      while (guess == null) {
-        excluded.add(ch);
-        ch = wordset.suggest(excluded);
-        for (String word : candidates) {
-          if (word.indexOf(ch) != -1) {
-            guess = word;
-            break;
-          }
-        }
-      }
-    }
-
-    assert(guess != null);
+    assert(guess != -1);
     return guess;
   }
 
   /**
    * Suggest a letter or word.
    */
-  private String suggest(String pattern, WordSet wordset, HangmanGame game) {
-    //If the pattern collection has only one word, that's it!
+  private void suggest(PatternKey pattern, WordSet wordset, HangmanGame game, GuessResult result) {
+    WordIndex index = wordset.index();
+
+    //If the pattern collection has only one word, that's it! Unless it's guessed already,
+    //which only happens when the secret word is removed during the game.
     if (wordset.wordCount() == 1) {
-      return wordset.words().get(0);
+      Set<String> wrongWords = game.getIncorrectlyGuessedWords();
+      if (wrongWords.isEmpty() || !wrongWords.contains(index.word(wordset.id(0)))) {
+        index.copyWord(wordset.id(0), result.setWord(pattern.length()));
+        return;
+      }
+    }
+    if (wordset.wordCount() <= 1) {
+      guessUnknown(root(this.roots, pattern.length()), game, result);
+      return;
     }
 
     //Make a guess, according to letter frequency of a pattern.
-    String word = null;
-    Set<Character> wrongLetters = game.getIncorrectlyGuessedLetters();
-    Set<String> wrongWords = game.getIncorrectlyGuessedWords();
-    int patternBlanks = numOfBlanks(pattern); //Number of '-' characters in a pattern.
+    long wrongLetters = wrongLetters(index, game);
+    int patternBlanks = game.numBlanks(); //Number of '-' characters in a pattern.
 
     if (patternBlanks > 1) {
-      if (game.numWrongGuessesRemaining() == 0)
-        word = finalBlow(pattern, wordset, wrongLetters);
+      if (game.numWrongGuessesRemaining() == 0) {
+        int id;
+        if (Metrics.ENABLED) {
+          long start = System.nanoTime();
+          id = finalBlow(wordset, wrongLetters);
+          Metrics.finalBlowNanos.record(System.nanoTime() - start);
+        }
+        else {
+          id = finalBlow(wordset, wrongLetters);
+        }
+        index.copyWord(id, result.setWord(pattern.length()));
+      }
       else {
-        word = Character.toString(wordset.suggest(wrongLetters));
+        int code = wordset.suggest(wrongLetters);
+        if (code >= 0)
+          result.setLetter(index.letter(code));
+        else
+          guessUnknown(root(this.roots, pattern.length()), game, result);
       }
     }
     else {
-      Set<Character> excluded = new HashSet<Character>(wrongLetters);
+      Set<String> wrongWords = game.getIncorrectlyGuessedWords();
+      long excluded = wrongLetters;
       while(true) {
-        char ch = wordset.suggest(excluded);
-        word = pattern.replace(HangmanGame.MYSTERY_LETTER, ch);
-        if (!wrongWords.contains(word))
+        int code = wordset.suggest(excluded);
+        if (code < 0) { //Every word is guessed already
+          guessUnknown(root(this.roots, pattern.length()), game, result);
           break;
-        else
-          excluded.add(ch);
+        }
+        char ch = index.letter(code);
+        if (!wrongWords.isEmpty() && isWrongWord(pattern, ch, wrongWords))
+          excluded |= 1L << index.code(ch);
+        else {
+          char[] word = result.setWord(pattern.length());
+          for (int i = 0; i < pattern.length(); i++) {
+            char p = pattern.charAt(i);
+            word[i] = p == HangmanGame.MYSTERY_LETTER ? ch : p;
+          }
+          break;
+        }
       }
     }
-
-    assert(word != null);
-    return word;
   }
 
   /**
-   * Return true only when str matches pattern EXACTLY. A pattern is a string returned by HangmanGame::getGuessedSoFar.
-   * e.g. given pattern "AB-", string "ABC" and "ABD" match it, while "ABA" "ABB" and "XYZ" DON'T. In the same
-   * example, the patternChars argument must be {'A', 'B'}
+   * Guess a letter in a game whose secret word isn't one of the words, which happens when it's
+   * removed while the game is played: the first letter not guessed yet in the order of all
+   * the words of its length, or failing that, of the letters of their index or 'A' to 'Z'.
+   * @param root The WordSet of all the words of the length of the secret word, or null if none
    */
-  private static boolean match(String pattern, String str, Set<Character> patternChars) {
-    assert(pattern.length() == str.length());
-
-    int size = pattern.length();
-    boolean ret = true;
-    for (int i = 0; i < size; i++) {
-      if (pattern.charAt(i) != HangmanGame.MYSTERY_LETTER) {
-        if (pattern.charAt(i) != str.charAt(i)) {
-          ret = false;
-          break;
-        }
-      }
-      else {
-        if (patternChars.contains(str.charAt(i))) {
-          ret = false;
-          break;
-        }
+  private static void guessUnknown(WordSet root, HangmanGame game, GuessResult result) {
+    Set<Character> guessed = game.getAllGuessedLetters();
+    StringBuilder letters = new StringBuilder();
+    if (root != null) {
+      for (byte code : root.order())
+        letters.append(root.index().letter(code));
+      letters.append(root.index().letters());
+    }
+    for (char ch = 'A'; ch <= 'Z'; ch++)
+      letters.append(ch);
+    for (int i = 0; i < letters.length(); i++) {
+      if (!guessed.contains(letters.charAt(i))) {
+        result.setLetter(letters.charAt(i));
+        return;
       }
     }
-    return ret;
+    //Only letters unknown to all the words are left, so the pattern is as good a guess as any
+    char[] word = result.setWord(game.getSecretWordLength());
+    for (int i = 0; i < game.getSecretWordLength(); i++)
+      word[i] = game.getGuessedSoFar(i);
   }
 
   /**
-   * If a word has any characters in chars, return true, otherwise false.
+   * Return true if the word made of a pattern with its blanks filled by ch is one of the wrong words.
    */
-  private static boolean hasAny(String word, Set<Character> chars) {
-    for (int i = 0; i < word.length(); i++) {
-      if (chars.contains(word.charAt(i)))
+  private static boolean isWrongWord(PatternKey pattern, char ch, Set<String> wrongWords) {
+    for (String word : wrongWords) {
+      if (word.length() != pattern.length())
+        continue;
+      boolean same = true;
+      for (int i = 0; i < word.length() && same; i++) {
+        char p = pattern.charAt(i);
+        same = word.charAt(i) == (p == HangmanGame.MYSTERY_LETTER ? ch : p);
+      }
+      if (same)
         return true;
     }
     return false;
   }
 
-  private static int numOfBlanks(String pattern) {
-    int count = 0;
-    for (int i = 0; i < pattern.length(); i++) {
-      if (pattern.charAt(i) == HangmanGame.MYSTERY_LETTER)
-        count++;
+  /**
+   * Return the set of the letters of the index wrongly guessed in a game.
+   */
+  private static long wrongLetters(WordIndex index, HangmanGame game) {
+    //Codes of 'A' to 'Z' are the same as their bits in the game's mask.
+    long mask = game.getIncorrectLetterMask();
+    if (index.alphabetSize() > 26) {
+      for (char ch : game.getIncorrectlyGuessedLetters()) {
+        int code = index.code(ch);
+        if (code >= 26)
+          mask |= 1L << code;
+      }
     }
-    return count;
+    return mask;
   }
 
-
 }
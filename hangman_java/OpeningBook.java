@@ -0,0 +1,277 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The first letter guesses of MyGuessingStrategy for every way the first turns of a game
+ * may go, so they can be looked up instead of refining the dictionary to the pattern.
+ * It's a decision tree from the all-blank pattern of each word length to a given depth,
+ * flattened into a table keyed by the pattern and the wrong letters of a turn.
+ * The book is made offline by running this class, and is saved next to the dictionary
+ * with its checksum like IndexFile does.
+ *
+ * File layout (big-endian):
+ *   int magic, int version, long dictionary checksum, int depth, int number of entries
+ *   then for each entry, UTF pattern, int mask of the wrong letters, char guess
+ */
+class OpeningBook {
+  private static final int MAGIC = 0x484d4f42; // "HMOB"
+  private static final int VERSION = 3;
+
+  /**
+   * Default number of guesses of a game covered by a book
+   */
+  public static final int DEFAULT_DEPTH = 2;
+
+  private final int depth;
+
+  /**
+   * An open addressing hash table of the entries. Given an entry at slot i, its pattern
+   * is patterns[i], its wrong letters wrongs[i] in the mask of HangmanGame::getIncorrectLetterMask
+   * and its guess guesses[i]. A slot of no entry has a null pattern.
+   */
+  private String[] patterns;
+  private int[] wrongs;
+  private char[] guesses;
+  private int size = 0;
+
+  private OpeningBook(int depth, int capacity) {
+    this.depth = depth;
+    int slots = 16;
+    while (slots < capacity * 2)
+      slots <<= 1;
+    this.patterns = new String[slots];
+    this.wrongs = new int[slots];
+    this.guesses = new char[slots];
+  }
+
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_dict");
+    if (file == null)
+      file = "words.txt";
+
+    int depth = DEFAULT_DEPTH;
+    if (args.length > 0) {
+      try {
+        depth = Integer.parseInt(args[0]);
+        if (depth < 1)
+          throw new NumberFormatException();
+      }
+      catch (NumberFormatException e) {
+        System.err.println(String.format("%s is not a valid depth!", args[0]));
+        System.exit(-1);
+      }
+    }
+    String output = args.length > 1 ? args[1] : path(file);
+
+    //Made from the dictionary itself, so the book holds the guesses of the live computation
+    MyGuessingStrategy strategy = new MyGuessingStrategy(Main.readDictionary(file), 0);
+    OpeningBook book = build(strategy, depth);
+    try {
+      book.write(new File(output), IndexFile.checksum(new File(file)));
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write opening book '%s': %s", output, e.getMessage()));
+      System.exit(-1);
+    }
+    System.err.println(String.format("Opening book of '%s' of %d entries is written to '%s'.", file, book.size(), output));
+  }
+
+  /**
+   * @return The path of the opening book of a dictionary, which is given by the hangman_book
+   * environment variable or otherwise next to the dictionary.
+   */
+  public static String path(String dict) {
+    String book = System.getenv("hangman_book");
+    return book != null ? book : dict + ".book";
+  }
+
+  /**
+   * Make the book of the guesses a strategy gives in the first turns of games.
+   * @param strategy A strategy using no opening book
+   * @param depth Number of guesses of a game covered by the book
+   */
+  public static OpeningBook build(MyGuessingStrategy strategy, int depth) {
+    OpeningBook book = new OpeningBook(depth, 1024);
+    for (WordIndex index : strategy.indexes()) {
+      if (index == null || index.size() == 0)
+        continue;
+      int[] ids = new int[index.size()];
+      for (int id = 0; id < ids.length; id++)
+        ids[id] = id;
+      book.expand(strategy, index, ids, "", depth);
+    }
+    return book;
+  }
+
+  /**
+   * Add the guess of a turn and those of the turns following it to the book.
+   * A turn is played by replaying the guesses so far on a game of any of the words
+   * which may lead to it.
+   * @param ids The words which may lead to the turn
+   * @param guessed The letters guessed so far
+   * @param depth Number of the guesses to add from this turn on
+   */
+  private void expand(MyGuessingStrategy strategy, WordIndex index, int[] ids, String guessed, int depth) {
+    HangmanGame game = new HangmanGame(index.word(ids[0]), Integer.MAX_VALUE);
+    for (int i = 0; i < guessed.length(); i++)
+      game.makeLetterGuess(guessed.charAt(i));
+    //Lookups only cover wrong letters in the mask, see guess
+    if (game.gameStatus() != HangmanGame.Status.KEEP_GUESSING || game.numBlanks() < 2
+        || game.numWrongGuessesMade() != Integer.bitCount(game.getIncorrectLetterMask()))
+      return;
+
+    GuessResult result = new GuessResult();
+    strategy.nextGuess(game, result);
+    char ch = result.getLetter();
+    if (ch == 0) //A word guess, which ends the book
+      return;
+    put(game.getGuessedSoFar(), game.getIncorrectLetterMask(), ch);
+    if (depth == 1)
+      return;
+
+    //Group the words by the positions of the letter guessed, which is the next pattern
+    int code = index.code(ch);
+    Map<Long, List<Integer>> groups = new LinkedHashMap<Long, List<Integer>>();
+    for (int id : ids) {
+      long positions = 0;
+      for (int i = 0; i < index.length(); i++) {
+        if (index.code(id, i) == code)
+          positions |= 1L << i;
+      }
+      List<Integer> group = groups.get(positions);
+      if (group == null) {
+        group = new ArrayList<Integer>();
+        groups.put(positions, group);
+      }
+      group.add(id);
+    }
+    for (List<Integer> group : groups.values()) {
+      int[] next = new int[group.size()];
+      for (int i = 0; i < next.length; i++)
+        next[i] = group.get(i);
+      expand(strategy, index, next, guessed + ch, depth - 1);
+    }
+  }
+
+  public int depth() {
+    return this.depth;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Look up the guess of a game, which is only in the book if the game has more than one
+   * blank and no wrong guess but the letters of 'A' to 'Z'.
+   * @param pattern The key of the turn of the game
+   * @return The letter to guess, or 0 if the turn is not in the book
+   */
+  public char guess(PatternKey pattern, HangmanGame game) {
+    //Codes of 'A' to 'Z' are the same as their bits in the game's mask.
+    int wrong = game.getIncorrectLetterMask();
+    if (game.numWrongGuessesMade() != Integer.bitCount(wrong) || pattern.wrong() != wrong)
+      return 0;
+    int mask = this.patterns.length - 1;
+    for (int i = slot(pattern.hashCode()) & mask; this.patterns[i] != null; i = (i + 1) & mask) {
+      if (this.wrongs[i] == wrong && this.patterns[i].contentEquals(pattern))
+        return this.guesses[i];
+    }
+    return 0;
+  }
+
+  private void put(String pattern, int wrong, char guess) {
+    if ((this.size + 1) * 2 > this.patterns.length)
+      resize();
+    int mask = this.patterns.length - 1;
+    int i = slot(PatternKey.hash(pattern, wrong)) & mask;
+    while (this.patterns[i] != null) {
+      if (this.wrongs[i] == wrong && this.patterns[i].equals(pattern)) {
+        this.guesses[i] = guess;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    this.patterns[i] = pattern;
+    this.wrongs[i] = wrong;
+    this.guesses[i] = guess;
+    this.size++;
+  }
+
+  private void resize() {
+    String[] patterns = this.patterns;
+    int[] wrongs = this.wrongs;
+    char[] guesses = this.guesses;
+    this.patterns = new String[patterns.length * 2];
+    this.wrongs = new int[patterns.length * 2];
+    this.guesses = new char[patterns.length * 2];
+    this.size = 0;
+    for (int i = 0; i < patterns.length; i++) {
+      if (patterns[i] != null)
+        put(patterns[i], wrongs[i], guesses[i]);
+    }
+  }
+
+  private static int slot(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  public void write(File file, long checksum) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(checksum);
+      out.writeInt(this.depth);
+      out.writeInt(this.size);
+      for (int i = 0; i < this.patterns.length; i++) {
+        if (this.patterns[i] == null)
+          continue;
+        out.writeUTF(this.patterns[i]);
+        out.writeInt(this.wrongs[i]);
+        out.writeChar(this.guesses[i]);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read a book from a file.
+   * @return The book, or null if the file is not of the current version or is made from
+   * a dictionary of a different checksum.
+   */
+  public static OpeningBook read(File file, long checksum) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != checksum)
+        return null;
+      int depth = in.readInt();
+      int size = in.readInt();
+      if (depth < 1 || size < 0)
+        throw new IOException("Broken opening book");
+      OpeningBook book = new OpeningBook(depth, size);
+      for (int i = 0; i < size; i++)
+        book.put(in.readUTF(), in.readInt(), in.readChar());
+      return book;
+    }
+    catch (EOFException e) { //Truncated file
+      throw new IOException("Broken opening book", e);
+    }
+    finally {
+      in.close();
+    }
+  }
+}
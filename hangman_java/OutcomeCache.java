@@ -0,0 +1,179 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Outcomes of games played by a strategy, so a secret word played again is answered without
+ * playing it. A strategy always plays a word the same way with the same dictionary, so an
+ * outcome is known by the word and the maximum wrong guesses, within a fingerprint of the
+ * dictionary and the strategy with its version, see Strategies.fingerprint. Outcomes are bounded in number like the WordSets of
+ * MyGuessingStrategy, and can be saved to a file and read back in a later run, where
+ * a file of another fingerprint is ignored.
+ *
+ * File layout (UTF-8 text):
+ *   HMOC version fingerprint
+ *   then a line for each outcome: word, maximum wrong guesses, score, then the guesses
+ */
+class OutcomeCache {
+  private static final String MAGIC = "HMOC";
+  private static final int VERSION = 3;
+
+  /**
+   * Default maximum number of outcomes held
+   */
+  public static final long DEFAULT_SIZE = 1 << 16;
+
+  /**
+   * The outcome of a game: its score and the guesses made, separated by spaces.
+   */
+  public static class Outcome {
+    public final int score;
+    public final String guesses;
+
+    Outcome(int score, String guesses) {
+      this.score = score;
+      this.guesses = guesses;
+    }
+  }
+
+  private static class Key {
+    final String word;
+    final int maxWrongGuesses;
+
+    Key(String word, int maxWrongGuesses) {
+      this.word = word;
+      this.maxWrongGuesses = maxWrongGuesses;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * this.word.hashCode() + this.maxWrongGuesses;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key))
+        return false;
+      Key rhs = (Key)o;
+      return this.maxWrongGuesses == rhs.maxWrongGuesses && this.word.equals(rhs.word);
+    }
+  }
+
+  private final GuessingStrategy strategy;
+  private final String fingerprint;
+  private final BoundedCache<Key, Outcome> outcomes;
+
+  /**
+   * @param fingerprint Anything telling the dictionary and the strategy from others, without spaces
+   * @param size The maximum number of outcomes held, zero or negative for no limit
+   */
+  public OutcomeCache(GuessingStrategy strategy, String fingerprint, long size) {
+    this.strategy = strategy;
+    this.fingerprint = fingerprint;
+    this.outcomes = new BoundedCache<Key, Outcome>(size) {
+      @Override
+      protected Outcome load(Key key) {
+        return play(key.word, key.maxWrongGuesses);
+      }
+
+      @Override
+      protected int weigh(Outcome outcome) {
+        return 1;
+      }
+    };
+  }
+
+  /**
+   * @return The outcome of a game of a secret word, which is played if not known yet
+   */
+  public Outcome get(String word, int maxWrongGuesses) {
+    return this.outcomes.get(new Key(word, maxWrongGuesses));
+  }
+
+  /**
+   * Play a game and record the guesses made.
+   */
+  private Outcome play(String word, int maxWrongGuesses) {
+    StringBuilder guesses = new StringBuilder();
+    int score = new HangmanGame(word, maxWrongGuesses).run(this.strategy, false, new GuessResult(), guesses);
+    return new Outcome(score, guesses.toString());
+  }
+
+  /**
+   * Read the outcomes saved in a file, if it's of the same fingerprint.
+   * @return The number of the outcomes read, or -1 if the file is of another fingerprint
+   */
+  public int read(File file) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line = in.readLine();
+      if (line == null || !line.equals(header()))
+        return -1;
+      int count = 0;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split(" ", 4);
+        if (fields.length < 3)
+          continue; //A line cut short
+        try {
+          Key key = new Key(fields[0], Integer.parseInt(fields[1]));
+          this.outcomes.put(key, new Outcome(Integer.parseInt(fields[2]), fields.length > 3 ? fields[3] : ""));
+          count++;
+        }
+        catch (NumberFormatException e) {
+          continue;
+        }
+      }
+      return count;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Save the outcomes to a file, which is replaced at once so a failed save leaves the old one.
+   */
+  public void write(File file) throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8), 1 << 16);
+    try {
+      out.write(header());
+      out.write('\n');
+      for (Map.Entry<Key, Outcome> entry : this.outcomes.snapshot().entrySet()) {
+        Key key = entry.getKey();
+        Outcome outcome = entry.getValue();
+        out.write(key.word);
+        out.write(' ');
+        out.write(Integer.toString(key.maxWrongGuesses));
+        out.write(' ');
+        out.write(Integer.toString(outcome.score));
+        out.write(' ');
+        out.write(outcome.guesses);
+        out.write('\n');
+      }
+    }
+    finally {
+      out.close();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private String header() {
+    return MAGIC + " " + VERSION + " " + this.fingerprint;
+  }
+
+  @Override
+  public String toString() {
+    return this.outcomes.toString();
+  }
+}
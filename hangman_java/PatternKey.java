@@ -0,0 +1,107 @@
+/**
+ * A pattern of the current Hangman game and its wrong letters as a key of pattern maps.
+ * Unlike a String, the same key can be set to the turn of another game, so looking up a
+ * pattern doesn't need a new object; an immutable copy is only made for a new pattern put
+ * into a map. As a CharSequence it's the pattern alone.
+ */
+class PatternKey implements CharSequence {
+  private char[] chars;
+  private int length;
+  private long wrong;
+  private int hash;
+
+  public PatternKey() {
+    this.chars = new char[32];
+  }
+
+  private PatternKey(char[] chars, int length, long wrong, int hash) {
+    this.chars = chars;
+    this.length = length;
+    this.wrong = wrong;
+    this.hash = hash;
+  }
+
+  /**
+   * @return The hash code of a key of a pattern, given as a String, and its wrong letters
+   */
+  public static int hash(String pattern, long wrong) {
+    return hash(pattern.hashCode(), wrong);
+  }
+
+  private static int hash(int patternHash, long wrong) {
+    return 31 * patternHash + (int)(wrong ^ (wrong >>> 32));
+  }
+
+  /**
+   * Set the key to the pattern of a game, which is returned by HangmanGame::getGuessedSoFar.
+   * @param wrong The codes of the letters wrongly guessed in the game as a mask
+   * @return This key
+   */
+  public PatternKey set(HangmanGame game, long wrong) {
+    int length = game.getSecretWordLength();
+    if (this.chars.length < length)
+      this.chars = new char[length];
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      char ch = game.getGuessedSoFar(i);
+      this.chars[i] = ch;
+      hash = 31 * hash + ch;
+    }
+    this.length = length;
+    this.wrong = wrong;
+    this.hash = hash(hash, wrong);
+    return this;
+  }
+
+  /**
+   * @return An immutable copy of the key
+   */
+  public PatternKey copy() {
+    char[] chars = new char[this.length];
+    System.arraycopy(this.chars, 0, chars, 0, this.length);
+    return new PatternKey(chars, this.length, this.wrong, this.hash);
+  }
+
+  /**
+   * @return The codes of the wrong letters as a mask
+   */
+  public long wrong() {
+    return this.wrong;
+  }
+
+  public int length() {
+    return this.length;
+  }
+
+  public char charAt(int index) {
+    return this.chars[index];
+  }
+
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  @Override
+  public int hashCode() {
+    return this.hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof PatternKey))
+      return false;
+    PatternKey rhs = (PatternKey)o;
+    if (this.hash != rhs.hash || this.length != rhs.length || this.wrong != rhs.wrong)
+      return false;
+    for (int i = 0; i < this.length; i++) {
+      if (this.chars[i] != rhs.chars[i])
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return new String(this.chars, 0, this.length);
+  }
+}
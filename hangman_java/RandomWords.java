@@ -1,12 +1,11 @@
-import java.util.Scanner;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.util.Set;
-import java.util.HashSet;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.LinkedList;
 import java.util.Random;
-import java.util.Calendar;
 
 class RandomWords {
   public static void main(String[] args) {
@@ -20,14 +19,9 @@ class RandomWords {
       file = "words.txt";
 
     // Read in dictionary file
-    List<String> dict = new LinkedList<String>();
+    List<String> dict = new ArrayList<String>();
     try {
-	    Scanner s = new Scanner(new File(file));
-      while (s.hasNext()) {
-		    String word = s.next();
-		    if (word.length() > 0)
-		      dict.add(word.toUpperCase());
-      }
+      WordReader.readWords(new File(file), dict);
     }
     catch (IOException e) {
       System.err.println(String.format("Cannot open dictionary file '%s' for reading!", file));
@@ -48,19 +42,44 @@ class RandomWords {
       System.exit(-1);
     }
 
-    // Produce random words in dictionary
+    // The seed is given by the second argument or the hangman_seed environment variable,
+    // so a random input can be played again.
+    String sseed = args.length > 1 ? args[1] : System.getenv("hangman_seed");
+    long seed = System.currentTimeMillis();
+    if (sseed != null) {
+      try {
+        seed = Long.parseLong(sseed);
+      }
+      catch(NumberFormatException e) {
+        System.err.println(String.format("%s is not a number!", sseed));
+        System.exit(-1);
+      }
+    }
+
+    // Produce random words in dictionary. Each pick swaps a uniformly chosen word among
+    // the not picked ones to the front, so every word is equally likely and none repeats.
     int size = dict.size();
-    Set<Integer> included = new HashSet<Integer>();
-    Random rand = new Random(Calendar.getInstance().getTime().getTime());
+    int[] picks = new int[size];
+    for (int i = 0; i < size; i++)
+      picks[i] = i;
+    Random rand = new Random(seed);
 
-    while (count > 0) {
-      int r = (rand.nextInt(size) * 10 + rand.nextInt(size) + (rand.nextInt(size) / (rand.nextInt(size) + 1))) % size;
-      if (included.add(r)) {
-        System.out.println(dict.get(r));
-        count--;
+    try {
+      Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+      for (int i = 0; i < count; i++) {
+        int r = i + rand.nextInt(size - i);
+        int pick = picks[r];
+        picks[r] = picks[i];
+        picks[i] = pick;
+        out.write(dict.get(pick));
+        out.write(System.lineSeparator());
       }
+      out.flush();
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write words: %s", e.getMessage()));
+      System.exit(-1);
     }
-
   }
 
-}
\ No newline at end of file
+}
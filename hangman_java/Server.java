@@ -0,0 +1,500 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long running server hosting Hangman games over a line based protocol on localhost, so
+ * the dictionary is loaded and indexed once for all the games. A selector thread does all
+ * the network I/O, and the commands of a connection are run in order by a pool of workers,
+ * one batch of them at a time, sharing one strategy.
+ *
+ * Commands, one per line, and their replies:
+ *   NEW word [max]   start a game of a dictionary word      OK id pattern
+ *   GUESS id         make the strategy's next guess         OK guess pattern status score
+ *   LETTER id ch     guess a letter                         OK pattern status score
+ *   WORD id word     guess a word                           OK pattern status score
+ *   STATE id         show a game                            OK pattern status score
+ *   END id           end a game                             OK
+ *   PLAY word [max]  let the strategy play a whole game     OK word score
+ *   ADD word...      add words to the dictionary            OK number of words
+ *   REMOVE word...   remove words from the dictionary       OK number of words
+ *   RELOAD           read the dictionary file again         OK number of words
+ *   QUIT             close the connection
+ * A failed command is replied with "ERR message". max is the maximum wrong guesses, which
+ * is hangman_guesses or 5 by default. Games go on while the dictionary is changed, and
+ * those of the words removed go on too, only the strategy doesn't know their words. Only
+ * MyGuessingStrategy and the strategies built on it can have their words changed.
+ *
+ * Games not used for hangman_session_timeout seconds (default 300) are ended, and at most
+ * hangman_sessions games (default 100000) are kept. A connection isn't read while it has
+ * too many commands waiting or too many replies not written yet, so a client sending
+ * faster than its commands are run is slowed down by TCP rather than using up memory.
+ */
+class Server {
+  /**
+   * Limits of a connection, beyond which it isn't read until it catches up
+   */
+  private static final int MAX_PENDING_LINES = 256;
+  private static final int MAX_PENDING_OUTPUT = 1 << 16;
+  private static final int MAX_LINE = 1024;
+
+  private static final Set<String> COMMANDS = new HashSet<String>(Arrays.asList(
+    "NEW", "GUESS", "LETTER", "WORD", "STATE", "END", "PLAY", "ADD", "REMOVE", "RELOAD", "QUIT"));
+
+  private static class Session {
+    final HangmanGame game;
+    final GuessResult guess = new GuessResult();
+    volatile long lastUsed = System.currentTimeMillis();
+
+    Session(HangmanGame game) {
+      this.game = game;
+    }
+  }
+
+  /**
+   * A client connection. Lines read are queued by the selector thread and run by at most
+   * one worker at a time; replies are queued by the worker and written by the selector thread.
+   */
+  private class Connection implements Runnable {
+    final SocketChannel channel;
+    SelectionKey key;
+    final ByteBuffer in = ByteBuffer.allocate(8192);
+    byte[] line = new byte[128];
+    int lineLength = 0;
+    boolean closing = false;
+
+    //Guarded by this
+    final Queue<String> lines = new ArrayDeque<String>();
+    final Queue<ByteBuffer> replies = new ArrayDeque<ByteBuffer>();
+    int pendingOutput = 0;
+    boolean running = false;
+    boolean signalled = false; //Put in changed and not updated by the selector thread since
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Run the queued commands, called by a worker. Each reply is handed to the selector
+     * thread as soon as it's made, so a pipelining client gets the replies of quick commands
+     * without waiting for the slow ones after them. The selector thread is only woken up if
+     * it hasn't been since it last took the replies, so a batch of quick commands costs few
+     * wakeups.
+     */
+    public void run() {
+      String line;
+      do {
+        boolean signal = false;
+        synchronized (this) {
+          line = this.lines.poll();
+          if (line == null) {
+            this.running = false;
+            signal = signal();
+          }
+        }
+        if (line != null) {
+          String reply = execute(line);
+          synchronized (this) {
+            if (reply == null) { //Nothing after QUIT is run or replied
+              this.closing = true;
+              this.lines.clear();
+              this.running = false;
+              line = null;
+            }
+            else {
+              ByteBuffer bytes = ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.UTF_8));
+              this.replies.add(bytes);
+              this.pendingOutput += bytes.remaining();
+            }
+            signal = signal();
+          }
+        }
+        if (signal) {
+          changed.add(this);
+          selector.wakeup();
+        }
+      } while (line != null);
+    }
+
+    /**
+     * @return true if the selector thread is to be told of a change, which is only once
+     * until it updates the connection. Called holding this.
+     */
+    private boolean signal() {
+      if (this.signalled)
+        return false;
+      this.signalled = true;
+      return true;
+    }
+
+    /**
+     * Read what's available and queue the complete lines, called by the selector thread.
+     * @return false if the connection is to be closed
+     */
+    boolean read() throws IOException {
+      this.in.clear();
+      int n = this.channel.read(this.in);
+      if (n < 0)
+        return false;
+      this.in.flip();
+      boolean start = false;
+      synchronized (this) {
+        while (this.in.hasRemaining()) {
+          byte b = this.in.get();
+          if (b == '\n') {
+            int length = this.lineLength;
+            if (length > 0 && this.line[length - 1] == '\r')
+              length--;
+            if (!this.closing)
+              this.lines.add(new String(this.line, 0, length, StandardCharsets.UTF_8));
+            this.lineLength = 0;
+          }
+          else {
+            if (this.lineLength == MAX_LINE)
+              return false;
+            if (this.lineLength == this.line.length)
+              this.line = Arrays.copyOf(this.line, this.line.length * 2);
+            this.line[this.lineLength++] = b;
+          }
+        }
+        if (!this.running && !this.closing && !this.lines.isEmpty()) {
+          this.running = true;
+          start = true;
+        }
+      }
+      if (start)
+        workers.execute(this);
+      return true;
+    }
+
+    /**
+     * Write the queued replies as far as the socket takes them, called by the selector thread.
+     */
+    synchronized void write() throws IOException {
+      while (!this.replies.isEmpty()) {
+        ByteBuffer reply = this.replies.peek();
+        int n = this.channel.write(reply);
+        this.pendingOutput -= n;
+        if (reply.hasRemaining())
+          break;
+        this.replies.poll();
+      }
+    }
+
+    /**
+     * Update what the selector waits for, called by the selector thread.
+     * @return false if the connection is to be closed
+     */
+    synchronized boolean update() {
+      this.signalled = false;
+      if (this.closing && this.replies.isEmpty() && !this.running)
+        return false;
+      int ops = 0;
+      if (!this.closing && this.lines.size() < MAX_PENDING_LINES && this.pendingOutput < MAX_PENDING_OUTPUT)
+        ops |= SelectionKey.OP_READ;
+      if (!this.replies.isEmpty())
+        ops |= SelectionKey.OP_WRITE;
+      this.key.interestOps(ops);
+      return true;
+    }
+  }
+
+  private final GuessingStrategy strategy;
+  private final String file;
+
+  /**
+   * The indexes of the words at the moment, which the words of new games must be in. Only
+   * MyGuessingStrategy can change its words, and the indexes are changed with them, one
+   * change at a time under wordsLock.
+   */
+  private volatile List<WordIndex> indexes;
+  private final Object wordsLock = new Object();
+  private final int guesses;
+  private final long timeout;
+  private final int maxSessions;
+  private final ExecutorService workers;
+  private final Selector selector;
+
+  private final Map<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+  private final AtomicLong nextId = new AtomicLong();
+
+  /**
+   * Connections whose queues are changed by workers, for the selector thread to update
+   */
+  private final Queue<Connection> changed = new ConcurrentLinkedQueue<Connection>();
+
+  /**
+   * @param indexes The indexes of the dictionary the strategy is made over
+   * @param file The dictionary file, which is read again by RELOAD
+   */
+  Server(GuessingStrategy strategy, List<WordIndex> indexes, String file, int guesses, int threads, long timeout,
+      int maxSessions) throws IOException {
+    this.strategy = strategy;
+    this.indexes = indexes;
+    this.file = file;
+    this.guesses = guesses;
+    this.timeout = timeout;
+    this.maxSessions = maxSessions;
+    this.workers = Executors.newFixedThreadPool(threads);
+    this.selector = Selector.open();
+  }
+
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_dict");
+    if (file == null)
+      file = "words.txt";
+
+    int port = env("hangman_port", 7878);
+    int guesses = env("hangman_guesses", 5);
+    int threads = env("hangman_threads", Runtime.getRuntime().availableProcessors());
+    int timeout = env("hangman_session_timeout", 300);
+    int maxSessions = env("hangman_sessions", 100000);
+    long cache = MyGuessingStrategy.DEFAULT_CACHE_WEIGHT;
+    String scache = System.getenv("hangman_cache");
+    if (scache != null) {
+      try {
+        cache = Long.parseLong(scache);
+      }
+      catch (NumberFormatException e) {
+        cache = MyGuessingStrategy.DEFAULT_CACHE_WEIGHT;
+      }
+    }
+
+    Long checksum = Main.checksum(file);
+    List<WordIndex> indexes = Main.loadIndexes(file, checksum);
+    GuessingStrategy strategy = Main.loadStrategy(file, checksum, indexes, cache);
+    try {
+      new Server(strategy, indexes, file, guesses, threads, timeout * 1000L, maxSessions).serve(port);
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Server failed: %s", e.getMessage()));
+      System.exit(-1);
+    }
+  }
+
+  /**
+   * @return The positive number given by an environment variable, or the default value
+   */
+  private static int env(String name, int defaultValue) {
+    String value = System.getenv(name);
+    if (value == null)
+      return defaultValue;
+    try {
+      int n = Integer.parseInt(value);
+      return n > 0 ? n : defaultValue;
+    }
+    catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Accept and serve connections on a port of localhost until the process is killed.
+   */
+  public void serve(int port) throws IOException {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+    server.configureBlocking(false);
+    server.register(this.selector, SelectionKey.OP_ACCEPT);
+    System.err.println(String.format("Serving on 127.0.0.1:%d", port));
+
+    long lastExpiry = System.currentTimeMillis();
+    while (true) {
+      this.selector.select(1000);
+
+      Connection conn;
+      while ((conn = this.changed.poll()) != null) {
+        if (conn.key.isValid() && !conn.update())
+          close(conn);
+      }
+
+      Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        if (!key.isValid())
+          continue;
+        if (key.isAcceptable()) {
+          SocketChannel channel;
+          while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            conn = new Connection(channel);
+            conn.key = channel.register(this.selector, SelectionKey.OP_READ, conn);
+          }
+          continue;
+        }
+
+        conn = (Connection)key.attachment();
+        try {
+          if (key.isReadable() && !conn.read()) {
+            close(conn);
+            continue;
+          }
+          if (key.isWritable())
+            conn.write();
+          if (!conn.update())
+            close(conn);
+        }
+        catch (IOException e) {
+          close(conn);
+        }
+      }
+
+      long now = System.currentTimeMillis();
+      if (now - lastExpiry >= 1000) {
+        lastExpiry = now;
+        Iterator<Session> it = this.sessions.values().iterator();
+        while (it.hasNext()) {
+          Session session = it.next();
+          if (now - session.lastUsed > this.timeout) {
+            it.remove();
+            this.strategy.gameOver(session.game);
+          }
+        }
+      }
+    }
+  }
+
+  private void close(Connection conn) {
+    conn.key.cancel();
+    try {
+      conn.channel.close();
+    }
+    catch (IOException e) {
+    }
+  }
+
+  /**
+   * Run a command.
+   * @return The reply, or null to close the connection
+   */
+  private String execute(String line) {
+    String[] args = line.trim().split("\\s+");
+    String command = args[0].toUpperCase();
+    if (!COMMANDS.contains(command))
+      return "ERR unknown command";
+    try {
+      if (command.equals("QUIT"))
+        return null;
+      if (command.equals("NEW") || command.equals("PLAY")) {
+        if (args.length < 2)
+          return "ERR a word is expected";
+        String word = args[1].toUpperCase();
+        if (!WordIndex.contains(this.indexes, word))
+          return "ERR not a word of the dictionary";
+        int max = args.length > 2 ? Integer.parseInt(args[2]) : this.guesses;
+        if (max < 1)
+          return "ERR bad maximum wrong guesses";
+        HangmanGame game = new HangmanGame(word, max);
+        if (command.equals("PLAY"))
+          return "OK " + word + " " + game.run(this.strategy, false);
+
+        if (this.sessions.size() >= this.maxSessions)
+          return "ERR too many games";
+        long id = this.nextId.incrementAndGet();
+        this.sessions.put(id, new Session(game));
+        return "OK " + id + " " + game.getGuessedSoFar();
+      }
+
+      if (command.equals("ADD") || command.equals("REMOVE") || command.equals("RELOAD")) {
+        if (!(this.strategy instanceof MyGuessingStrategy))
+          return "ERR the words of the strategy can't be changed";
+      }
+      if (command.equals("ADD") || command.equals("REMOVE")) {
+        List<String> words = Arrays.asList(args).subList(1, args.length);
+        List<String> none = Collections.emptyList();
+        MyGuessingStrategy strategy = (MyGuessingStrategy)this.strategy;
+        synchronized (this.wordsLock) {
+          int size = command.equals("ADD") ? strategy.update(words, none) : strategy.update(none, words);
+          this.indexes = strategy.indexes();
+          return "OK " + size;
+        }
+      }
+      if (command.equals("RELOAD")) {
+        //Only the connection reloading waits; games are played on the old words meanwhile
+        Set<String> dict = new HashSet<String>();
+        try {
+          WordReader.readWords(new File(this.file), dict);
+        }
+        catch (IOException e) {
+          return "ERR cannot read the dictionary";
+        }
+        if (dict.isEmpty())
+          return "ERR no word in the dictionary";
+        List<WordIndex> indexes = MyGuessingStrategy.index(dict);
+        synchronized (this.wordsLock) {
+          ((MyGuessingStrategy)this.strategy).reload(indexes);
+          this.indexes = indexes;
+        }
+        return "OK " + dict.size();
+      }
+
+      if (args.length < 2)
+        return "ERR a game id is expected";
+      Session session = this.sessions.get(Long.parseLong(args[1]));
+      if (session == null)
+        return "ERR no such game";
+      session.lastUsed = System.currentTimeMillis();
+      if (command.equals("END")) {
+        this.sessions.remove(Long.parseLong(args[1]));
+        this.strategy.gameOver(session.game);
+        return "OK";
+      }
+
+      //A game may be played by more than one connection at the same time
+      synchronized (session) {
+        HangmanGame game = session.game;
+        String guess = "";
+        if (command.equals("GUESS") || command.equals("LETTER") || command.equals("WORD")) {
+          if (game.gameStatus() != HangmanGame.Status.KEEP_GUESSING)
+            return "ERR the game is over";
+          if (command.equals("GUESS")) {
+            this.strategy.nextGuess(game, session.guess);
+            session.guess.makeGuess(game);
+            StringBuilder text = new StringBuilder();
+            session.guess.appendTo(text);
+            guess = text.append(' ').toString();
+          }
+          else if (args.length < 3 || (command.equals("LETTER") && args[2].length() != 1)) {
+            return "ERR a guess is expected";
+          }
+          else if (command.equals("LETTER")) {
+            game.makeLetterGuess(args[2].charAt(0));
+          }
+          else {
+            game.guessWord(args[2]);
+          }
+          if (game.gameStatus() != HangmanGame.Status.KEEP_GUESSING)
+            this.strategy.gameOver(game);
+        }
+        return "OK " + guess + game.getGuessedSoFar() + " " + game.gameStatus() + " " + game.currentScore();
+      }
+    }
+    catch (NumberFormatException e) {
+      return "ERR bad number";
+    }
+    catch (RuntimeException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The guessing strategies by name, so one can be chosen by the hangman_strategy environment
+ * variable or an argument. Strategies are made over indexes of the dictionary, which are
+ * read-only and can be shared by any number of strategies.
+ */
+class Strategies {
+  /**
+   * Makes a strategy over indexes of words by length.
+   */
+  public interface Factory {
+    /**
+     * @param cacheWeight A bound on what the strategy caches, for the strategies caching
+     * WordSets the number of words they hold; zero or negative for no limit.
+     */
+    GuessingStrategy create(List<WordIndex> indexes, long cacheWeight);
+
+    /**
+     * @return The version of the guesses the strategies made give, which only grows, so what's
+     * saved of their games, e.g. outcomes, is known to be out of date.
+     */
+    int version();
+  }
+
+  /**
+   * The name of MyGuessingStrategy, which is used unless another one is chosen
+   */
+  public static final String DEFAULT = "frequency";
+
+  private static final Map<String, Factory> factories = new LinkedHashMap<String, Factory>();
+
+  static {
+    register(DEFAULT, new Factory() {
+      public GuessingStrategy create(List<WordIndex> indexes, long cacheWeight) {
+        return new MyGuessingStrategy(indexes, cacheWeight);
+      }
+
+      public int version() {
+        return MyGuessingStrategy.VERSION;
+      }
+    });
+    register("entropy", new Factory() {
+      public GuessingStrategy create(List<WordIndex> indexes, long cacheWeight) {
+        return new EntropyGuessingStrategy(indexes, cacheWeight);
+      }
+
+      public int version() {
+        //Its ties are broken by MyGuessingStrategy, so a change of either grows the sum
+        return MyGuessingStrategy.VERSION + EntropyGuessingStrategy.VERSION;
+      }
+    });
+  }
+
+  public static synchronized void register(String name, Factory factory) {
+    factories.put(name, factory);
+  }
+
+  /**
+   * @return The names of the strategies, in the order they are registered
+   */
+  public static synchronized Set<String> names() {
+    return Collections.unmodifiableSet(new LinkedHashSet<String>(factories.keySet()));
+  }
+
+  /**
+   * @return The name of the strategy chosen by the hangman_strategy environment variable,
+   * or the default one.
+   */
+  public static String chosen() {
+    String name = System.getenv("hangman_strategy");
+    return name != null ? name : DEFAULT;
+  }
+
+  /**
+   * Make a strategy by its name.
+   * @throws IllegalArgumentException If there's no strategy of the name
+   */
+  public static GuessingStrategy create(String name, List<WordIndex> indexes, long cacheWeight) {
+    return factory(name).create(indexes, cacheWeight);
+  }
+
+  /**
+   * @return The name and the version of a strategy, e.g. "frequency/1", which tells the
+   * guesses it gives from those of other strategies and of its other versions.
+   * @throws IllegalArgumentException If there's no strategy of the name
+   */
+  public static String fingerprint(String name) {
+    return name + "/" + factory(name).version();
+  }
+
+  private static synchronized Factory factory(String name) {
+    Factory factory = factories.get(name);
+    if (factory == null)
+      throw new IllegalArgumentException(String.format("Unknown strategy '%s', expected one of %s",
+        name, factories.keySet()));
+    return factory;
+  }
+}
@@ -0,0 +1,228 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the games played to a file, so what happened in a game can be looked into later
+ * with TraceReplay instead of running it again with hangman_debug. Games are only recorded
+ * if the hangman_trace environment variable gives the file. ENABLED is a constant, so when
+ * it's false the JIT drops the recording entirely.
+ * A game is recorded as one event by the thread playing it, which puts the event into a
+ * lock-free ring buffer and goes on; a background thread takes the events out in the order
+ * they're put and writes them, so no player waits for the file, nor for another player.
+ * A player only waits if the writer falls a whole buffer behind.
+ *
+ * File layout (big-endian):
+ *   int magic, int version
+ *   then for each game: long sequence number, UTF word, int maximum wrong guesses,
+ *   UTF guesses separated by spaces, int score, long nanoseconds taken
+ */
+class Trace {
+  public static final boolean ENABLED = System.getenv("hangman_trace") != null;
+
+  static final int MAGIC = 0x484d5452; // "HMTR"
+  static final int VERSION = 2;
+
+  /**
+   * Number of events the ring buffer holds, a power of 2
+   */
+  private static final int CAPACITY = 1 << 14;
+
+  private static class Event {
+    final long sequence;
+    final String word;
+    final int maxWrongGuesses;
+    final String guesses;
+    final int score;
+    final long nanos;
+
+    Event(long sequence, String word, int maxWrongGuesses, String guesses, int score, long nanos) {
+      this.sequence = sequence;
+      this.word = word;
+      this.maxWrongGuesses = maxWrongGuesses;
+      this.guesses = guesses;
+      this.score = score;
+      this.nanos = nanos;
+    }
+  }
+
+  /**
+   * The event of sequence number S is put to slots[S % CAPACITY], and the slot is cleared
+   * when it's taken out. Sequence numbers are claimed by players from head, while tail is
+   * the next one to take out, which is only changed by the writer.
+   */
+  private static final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<Event>(CAPACITY);
+  private static final AtomicLong head = new AtomicLong();
+  private static volatile long tail = 0;
+
+  /**
+   * Times a player waited for the writer to make room
+   */
+  private static final LongAdder stalls = new LongAdder();
+
+  /**
+   * The guesses of the game a thread is playing, as they're made
+   */
+  private static final ThreadLocal<StringBuilder> guesses = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder();
+    }
+  };
+
+  private static volatile boolean closing = false;
+  private static final Thread writer;
+
+  static {
+    if (ENABLED) {
+      final String file = System.getenv("hangman_trace");
+      writer = new Thread(new Runnable() {
+        public void run() {
+          write(file);
+        }
+      }, "hangman-trace");
+      writer.setDaemon(true);
+      writer.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        public void run() {
+          close();
+        }
+      }));
+    }
+    else {
+      writer = null;
+    }
+  }
+
+  private Trace() {
+  }
+
+  /**
+   * @return The guesses of the game the current thread starts to play, which are to be
+   * appended one by one separated by spaces and given to game at its end.
+   */
+  public static StringBuilder start() {
+    StringBuilder guesses = Trace.guesses.get();
+    guesses.setLength(0);
+    return guesses;
+  }
+
+  /**
+   * Record a game at its end.
+   * @param guesses The guesses made, separated by spaces
+   */
+  public static void game(String word, int maxWrongGuesses, CharSequence guesses, int score, long nanos) {
+    if (closing)
+      return;
+    long sequence = head.getAndIncrement();
+    Event event = new Event(sequence, word, maxWrongGuesses, guesses.toString(), score, nanos);
+    if (sequence - tail >= CAPACITY) {
+      stalls.increment();
+      while (sequence - tail >= CAPACITY) //The writer goes on until all claimed are written
+        LockSupport.parkNanos(100000);
+    }
+    slots.set((int)sequence & (CAPACITY - 1), event);
+  }
+
+  /**
+   * Write the events recorded so far and stop recording. It's also done when the process
+   * exits, so it need not be called unless the file is to be read before that.
+   */
+  public static void close() {
+    if (writer == null || closing)
+      return;
+    closing = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return Times players waited for the writer, which tells if the file is too slow
+   */
+  public static long stalls() {
+    return stalls.sum();
+  }
+
+  /**
+   * Take the events out in order and write them, until closed and all the events claimed
+   * are written. The file is flushed whenever there's nothing to write, so it can be read
+   * while games are played.
+   */
+  private static void write(String file) {
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write trace file '%s': %s", file, e.getMessage()));
+      out = null; //Events are still taken out, so no player waits
+    }
+
+    boolean dirty = true;
+    while (true) {
+      int slot = (int)tail & (CAPACITY - 1);
+      Event event = slots.get(slot);
+      if (event == null) {
+        if (closing && tail == head.get())
+          break;
+        if (dirty && out != null)
+          out = flush(out, file);
+        dirty = false;
+        LockSupport.parkNanos(1000000);
+        continue;
+      }
+      slots.lazySet(slot, null);
+      tail = tail + 1;
+      dirty = true;
+      if (out == null)
+        continue;
+      try {
+        out.writeLong(event.sequence);
+        out.writeUTF(event.word);
+        out.writeInt(event.maxWrongGuesses);
+        out.writeUTF(event.guesses);
+        out.writeInt(event.score);
+        out.writeLong(event.nanos);
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot write trace file '%s': %s", file, e.getMessage()));
+        out = null;
+      }
+    }
+
+    if (out != null) {
+      try {
+        out.close();
+      }
+      catch (IOException e) {
+        System.err.println(String.format("Cannot write trace file '%s': %s", file, e.getMessage()));
+      }
+    }
+  }
+
+  /**
+   * @return The stream flushed, or null if it fails
+   */
+  private static DataOutputStream flush(DataOutputStream out, String file) {
+    try {
+      out.flush();
+      return out;
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot write trace file '%s': %s", file, e.getMessage()));
+      return null;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Shows the games recorded by Trace: each guess of a game is made again on a new game of
+ * its word, and the pattern after it is printed, so a game looks like it does with
+ * hangman_debug. A game whose score made again differs from the one recorded is marked,
+ * which means the trace doesn't belong to this HangmanGame. The summary at the end is
+ * that of Main.
+ *
+ * Arguments: [-w word]... [file]
+ *   -w word  only show the games of the word, which may be given more than once
+ *   file     the trace file (default hangman_trace or hangman.trace)
+ */
+class TraceReplay {
+  public static void main(String[] args) {
+    String file = System.getenv("hangman_trace");
+    if (file == null)
+      file = "hangman.trace";
+    Set<String> words = new HashSet<String>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-w") && i + 1 < args.length)
+        words.add(args[++i].toUpperCase());
+      else if (args[i].equals("-w")) {
+        System.err.println("-w is not followed by a word!");
+        System.exit(-1);
+      }
+      else
+        file = args[i];
+    }
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+      if (in.readInt() != Trace.MAGIC || in.readInt() != Trace.VERSION) {
+        System.err.println(String.format("'%s' is not a trace file of this version!", file));
+        System.exit(-1);
+      }
+
+      double totalScore = 0;
+      int total = 0;
+      int mismatches = 0;
+      StringBuilder out = new StringBuilder();
+      while (true) {
+        long sequence;
+        try {
+          sequence = in.readLong();
+        }
+        catch (EOFException e) {
+          break;
+        }
+        String word = in.readUTF();
+        int max = in.readInt();
+        String guesses = in.readUTF();
+        int score = in.readInt();
+        long nanos = in.readLong();
+        if (!words.isEmpty() && !words.contains(word))
+          continue;
+
+        out.setLength(0);
+        out.append(String.format("#%d %s (max %d) %.3fms%n", sequence, word, max, nanos / 1e6));
+        HangmanGame game = new HangmanGame(word, max);
+        for (String guess : guesses.isEmpty() ? new String[0] : guesses.split(" ")) {
+          if (game.gameStatus() != HangmanGame.Status.KEEP_GUESSING) {
+            out.append("  (guesses after the end)").append(System.lineSeparator());
+            break;
+          }
+          if (guess.length() == 1)
+            game.makeLetterGuess(guess.charAt(0));
+          else
+            game.guessWord(guess);
+          out.append(String.format("  %-12s %s%n", guess, game.getGuessedSoFar()));
+        }
+        out.append(String.format("  %s = %d", game.gameStatus(), score));
+        if (game.currentScore() != score) {
+          out.append(String.format(", but %d when made again!", game.currentScore()));
+          mismatches++;
+        }
+        out.append(System.lineSeparator());
+        System.out.print(out);
+        totalScore += score;
+        total++;
+      }
+
+      if (total > 0)
+        System.out.println(String.format("-----------------------------\nAVG: %g\nNUM: %d\nTOTAL: %g\n",
+          totalScore / total, total, totalScore));
+      if (mismatches > 0)
+        System.err.println(String.format("%d games score differently when made again!", mismatches));
+    }
+    catch (EOFException e) {
+      System.err.println(String.format("Trace file '%s' is cut short.", file));
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Cannot read trace file '%s': %s", file, e.getMessage()));
+      System.exit(-1);
+    }
+    finally {
+      if (in != null) {
+        try {
+          in.close();
+        }
+        catch (IOException e) {
+        }
+      }
+    }
+  }
+}
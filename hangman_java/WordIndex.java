@@ -0,0 +1,524 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index over words of the same length, which finds the words matching a pattern
+ * with bitwise operations instead of comparing the words one by one.
+ * Each word is identified by its position in the array given to the constructor, and
+ * a set of words is a bitset over the ids: bit (id % 64) of long [id / 64].
+ * For every position in a word and every letter, the index keeps the bitset of the
+ * words having the letter at the position.
+ * Letters are numbered by codes: 'A' to 'Z' are 0 to 25, and other letters, if any, get
+ * the following codes. At most 64 letters are supported, so a set of letters fits a long.
+ * The words themselves are kept as letter codes, one byte a letter, in a single array,
+ * and a hash table of their ids over the array finds the id of a word, so the index is also
+ * the dictionary of the words of its length, without a String for each word.
+ */
+class WordIndex {
+  /**
+   * Number of letters from 'A' to 'Z', which get the first letter codes.
+   */
+  private static final int LATIN_LETTERS = 26;
+
+  /**
+   * Maximum number of different letters in the words of an index.
+   */
+  public static final int MAX_ALPHABET_SIZE = 64;
+
+  /**
+   * Letter codes of all the words one after another. The word of id I starts at arena[I * length]
+   */
+  private final byte[] arena;
+  private final int size;
+  private final int length;
+
+  /**
+   * Number of longs in a bitset over all the words
+   */
+  private final int units;
+
+  /**
+   * Codes of letters other than 'A' to 'Z', starting from LATIN_LETTERS.
+   * It's only changed in the constructor.
+   */
+  private final Map<Character, Integer> others = new HashMap<Character, Integer>();
+
+  /**
+   * Given a position P and a letter code C, the bitset of the words having the letter
+   * at the position is positions[P * alphabetSize + C], or null if there's no such word.
+   */
+  private final long[][] positions;
+  private final int alphabetSize;
+
+  /**
+   * Letters by their codes
+   */
+  private final char[] letters;
+
+  /**
+   * Given a word id, the set of its letters is masks[id], where bit C is set for letter code C.
+   */
+  private final long[] masks;
+
+  /**
+   * Given a letter code C, frequency[C] is how many times the letter appears in all the words
+   * and wordCount[C] is how many words contains the letter.
+   */
+  private final int[] frequency;
+  private final int[] wordCount;
+
+  /**
+   * Ids of the words plus one by the hashes of their letter codes, with open addressing and
+   * 0 for an empty slot. It's at most half full, so a lookup probes few slots.
+   */
+  private final int[] table;
+
+  /**
+   * @param words Words of the same length, at least one. Their ids are their positions in the array.
+   */
+  public WordIndex(String[] words) {
+    this(alphabet(words), words);
+  }
+
+  private WordIndex(char[] letters, String[] words) {
+    this(letters, encode(letters, words), words[0].length(), null, null);
+  }
+
+  /**
+   * Make an index of encoded words, e.g. read from an index file.
+   * @param letters Letters by their codes
+   * @param arena Letter codes of all the words one after another, which may be none
+   * @param length The length of the words
+   * @param frequency Letter frequencies of all the words, or null to count them now
+   * @param wordCount Number of words containing each letter, or null to count them now
+   */
+  public WordIndex(char[] letters, byte[] arena, int length, int[] frequency, int[] wordCount) {
+    assert(length > 0 && arena.length % length == 0);
+
+    this.letters = letters;
+    this.alphabetSize = letters.length;
+    if (this.alphabetSize > MAX_ALPHABET_SIZE)
+      throw new IllegalArgumentException(String.format("Words of length %d have more than %d different letters",
+        length, MAX_ALPHABET_SIZE));
+    for (int code = LATIN_LETTERS; code < this.alphabetSize; code++)
+      this.others.put(letters[code], code);
+
+    this.arena = arena;
+    this.length = length;
+    this.size = arena.length / length;
+    this.units = (this.size + 63) >>> 6;
+
+    boolean count = frequency == null || wordCount == null;
+    this.frequency = count ? new int[this.alphabetSize] : frequency;
+    this.wordCount = count ? new int[this.alphabetSize] : wordCount;
+    this.positions = new long[this.length * this.alphabetSize][];
+    this.masks = new long[this.size];
+    for (int id = 0; id < this.size; id++) {
+      for (int i = 0; i < this.length; i++) {
+        int code = arena[id * this.length + i];
+        int slot = i * this.alphabetSize + code;
+        if (this.positions[slot] == null)
+          this.positions[slot] = new long[this.units];
+        this.positions[slot][id >>> 6] |= 1L << id;
+        this.masks[id] |= 1L << code;
+        if (count)
+          this.frequency[code]++;
+      }
+      if (count) {
+        for (long mask = this.masks[id]; mask != 0; mask &= mask - 1)
+          this.wordCount[Long.numberOfTrailingZeros(mask)]++;
+      }
+    }
+
+    this.table = new int[Integer.highestOneBit(Math.max(this.size, 1) * 2 - 1) << 1];
+    int mask = this.table.length - 1;
+    for (int id = 0; id < this.size; id++) {
+      int hash = 0;
+      for (int i = 0, base = id * this.length; i < this.length; i++)
+        hash = 31 * hash + arena[base + i];
+      int slot = spread(hash) & mask;
+      while (this.table[slot] != 0)
+        slot = (slot + 1) & mask;
+      this.table[slot] = id + 1;
+    }
+  }
+
+  /**
+   * @return A hash of letter codes whose low bits depend on all the letters
+   */
+  private static int spread(int hash) {
+    hash *= 0x9e3779b9;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * @return Letters by their codes: 'A' to 'Z' followed by other letters of the words in the order they appear.
+   */
+  private static char[] alphabet(String[] words) {
+    assert(words.length > 0);
+
+    StringBuilder others = new StringBuilder();
+    for (String word : words) {
+      assert(word.length() == words[0].length());
+      for (int i = 0; i < word.length(); i++) {
+        char ch = word.charAt(i);
+        if ((ch < 'A' || ch > 'Z') && others.indexOf(String.valueOf(ch)) == -1)
+          others.append(ch);
+      }
+    }
+
+    char[] letters = new char[LATIN_LETTERS + others.length()];
+    for (int i = 0; i < LATIN_LETTERS; i++)
+      letters[i] = (char)('A' + i);
+    others.getChars(0, others.length(), letters, LATIN_LETTERS);
+    return letters;
+  }
+
+  /**
+   * @return Letter codes of the words one after another
+   */
+  private static byte[] encode(char[] letters, String[] words) {
+    int length = words[0].length();
+    byte[] arena = new byte[words.length * length];
+    encode(letters, words, arena, 0);
+    return arena;
+  }
+
+  /**
+   * Write the letter codes of words one after another to an arena from an offset.
+   */
+  private static void encode(char[] letters, String[] words, byte[] arena, int offset) {
+    int length = words[0].length();
+    for (int id = 0; id < words.length; id++) {
+      for (int i = 0; i < length; i++) {
+        char ch = words[id].charAt(i);
+        int code = ch - 'A';
+        if (code < 0 || code >= LATIN_LETTERS) {
+          code = LATIN_LETTERS;
+          while (letters[code] != ch)
+            code++;
+        }
+        arena[offset + id * length + i] = (byte)code;
+      }
+    }
+  }
+
+  /**
+   * Make an index of the words of this one with some words added and some removed. The
+   * letters keep their codes, and the letters of the added words not in this index get the
+   * following codes, so the sets of letters of this index are the same in the new one.
+   * The words kept are in the same order, followed by the words added, so the ids of the
+   * words of a set of this index are still in ascending order when mapped to the new one.
+   * Only the words of this length are indexed again; the letter statistics are updated
+   * with the words added and removed instead of being counted again.
+   * @param added Words to add, those already in the index are ignored
+   * @param removed Words to remove, those not in the index are ignored
+   * @param remap If not null, it's filled with the id in the new index of each word of this
+   * one, -1 for a removed word, and must be at least size() long
+   * @return The new index, which may have no words, or this index if no word is added or removed
+   * @throws IllegalArgumentException If an added word is of another length, or the words
+   * have more than MAX_ALPHABET_SIZE different letters
+   */
+  public WordIndex edit(Collection<String> added, Collection<String> removed, int[] remap) {
+    long[] gone = new long[this.units];
+    int goneCount = 0;
+    for (String word : removed) {
+      int id = find(word);
+      if (id >= 0 && (gone[id >>> 6] & (1L << id)) == 0) {
+        gone[id >>> 6] |= 1L << id;
+        goneCount++;
+      }
+    }
+
+    Set<String> fresh = new LinkedHashSet<String>();
+    StringBuilder others = new StringBuilder();
+    for (String word : added) {
+      if (word.length() != this.length)
+        throw new IllegalArgumentException(String.format("Word '%s' is not of length %d", word, this.length));
+      int id = find(word);
+      if (id >= 0 && (gone[id >>> 6] & (1L << id)) == 0)
+        continue;
+      fresh.add(word);
+      for (int i = 0; i < this.length; i++) {
+        char ch = word.charAt(i);
+        if (code(ch) < 0 && others.indexOf(String.valueOf(ch)) == -1)
+          others.append(ch);
+      }
+    }
+    if (goneCount == 0 && fresh.isEmpty())
+      return this;
+
+    char[] letters = Arrays.copyOf(this.letters, this.alphabetSize + others.length());
+    others.getChars(0, others.length(), letters, this.alphabetSize);
+    int[] frequency = Arrays.copyOf(this.frequency, letters.length);
+    int[] wordCount = Arrays.copyOf(this.wordCount, letters.length);
+
+    //Copy the words kept, then encode the words added after them
+    int size = this.size - goneCount + fresh.size();
+    byte[] arena = new byte[size * this.length];
+    int kept = 0;
+    for (int id = 0; id < this.size; id++) {
+      boolean keep = (gone[id >>> 6] & (1L << id)) == 0;
+      if (remap != null)
+        remap[id] = keep ? kept : -1;
+      if (keep) {
+        System.arraycopy(this.arena, id * this.length, arena, kept * this.length, this.length);
+        kept++;
+        continue;
+      }
+      for (int i = 0; i < this.length; i++)
+        frequency[code(id, i)]--;
+      for (long mask = this.masks[id]; mask != 0; mask &= mask - 1)
+        wordCount[Long.numberOfTrailingZeros(mask)]--;
+    }
+    if (!fresh.isEmpty()) {
+      encode(letters, fresh.toArray(new String[fresh.size()]), arena, kept * this.length);
+      for (int base = kept * this.length; base < arena.length; base += this.length) {
+        long mask = 0;
+        for (int i = 0; i < this.length; i++) {
+          frequency[arena[base + i]]++;
+          mask |= 1L << arena[base + i];
+        }
+        for (; mask != 0; mask &= mask - 1)
+          wordCount[Long.numberOfTrailingZeros(mask)]++;
+      }
+    }
+    return new WordIndex(letters, arena, this.length, frequency, wordCount);
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return The length of the words in the index
+   */
+  public int length() {
+    return this.length;
+  }
+
+  /**
+   * @return The word of the id, which is made from the arena on every call.
+   */
+  public String word(int id) {
+    char[] word = new char[this.length];
+    for (int i = 0, base = id * this.length; i < this.length; i++) {
+      word[i] = this.letters[this.arena[base + i]];
+    }
+    return new String(word);
+  }
+
+  /**
+   * Write the letters of the word of the id to an array.
+   */
+  public void copyWord(int id, char[] dst) {
+    for (int i = 0, base = id * this.length; i < this.length; i++) {
+      dst[i] = this.letters[this.arena[base + i]];
+    }
+  }
+
+  /**
+   * @return The letter code at a position of a word
+   */
+  public int code(int id, int position) {
+    return this.arena[id * this.length + position];
+  }
+
+  /**
+   * @return The set of letters in a word
+   */
+  public long mask(int id) {
+    return this.masks[id];
+  }
+
+  /**
+   * @return The set of letters in a string, ignoring MYSTERY_LETTER and letters not in the index.
+   */
+  public long mask(CharSequence str) {
+    long mask = 0;
+    for (int i = 0; i < str.length(); i++) {
+      char ch = str.charAt(i);
+      int code = ch != HangmanGame.MYSTERY_LETTER ? code(ch) : -1;
+      if (code >= 0)
+        mask |= 1L << code;
+    }
+    return mask;
+  }
+
+  public int alphabetSize() {
+    return this.alphabetSize;
+  }
+
+  public char letter(int code) {
+    return this.letters[code];
+  }
+
+  /**
+   * @return Letters by their codes. The array must not be changed.
+   */
+  public char[] letters() {
+    return this.letters;
+  }
+
+  /**
+   * @return Letter codes of all the words one after another. The array must not be changed.
+   */
+  public byte[] arena() {
+    return this.arena;
+  }
+
+  /**
+   * @return Letter frequencies of all the words by letter codes. The array must not be changed.
+   */
+  public int[] frequency() {
+    return this.frequency;
+  }
+
+  /**
+   * @return Number of words containing each letter by letter codes. The array must not be changed.
+   */
+  public int[] wordCount() {
+    return this.wordCount;
+  }
+
+  /**
+   * @param indexes Indexes of words by length, with null for the lengths of no words
+   * @return true if the word is one of the words of the indexes
+   */
+  public static boolean contains(List<WordIndex> indexes, CharSequence word) {
+    int length = word.length();
+    if (length == 0 || length > indexes.size())
+      return false;
+    WordIndex index = indexes.get(length - 1);
+    return index != null && index.find(word) >= 0;
+  }
+
+  /**
+   * @return The id of a word, or -1 if it's not in the index. It takes a few probes of the
+   * hash table, whatever the number of the words.
+   */
+  public int find(CharSequence word) {
+    if (word.length() != this.length)
+      return -1;
+
+    int hash = 0;
+    for (int i = 0; i < this.length; i++) {
+      int code = code(word.charAt(i));
+      if (code < 0)
+        return -1;
+      hash = 31 * hash + code;
+    }
+
+    int mask = this.table.length - 1;
+    for (int slot = spread(hash) & mask; this.table[slot] != 0; slot = (slot + 1) & mask) {
+      int id = this.table[slot] - 1;
+      int i = 0;
+      for (int base = id * this.length; i < this.length; i++) {
+        if (this.letters[this.arena[base + i]] != word.charAt(i))
+          break;
+      }
+      if (i == this.length)
+        return id;
+    }
+    return -1;
+  }
+
+  /**
+   * @return The code of a letter, or -1 if no word in the index has the letter.
+   */
+  public int code(char ch) {
+    if (ch >= 'A' && ch <= 'Z')
+      return ch - 'A';
+    Integer code = this.others.get(ch);
+    return code != null ? code : -1;
+  }
+
+  /**
+   * @return The bitset of the words matching the pattern EXACTLY. A pattern is a string returned
+   * by HangmanGame::getGuessedSoFar. e.g. given pattern "AB-", words "ABC" and "ABD" match it,
+   * while "ABA" "ABB" and "XYZ" DON'T.
+   */
+  public long[] filter(CharSequence pattern) {
+    assert(pattern.length() == this.length);
+
+    long[] set = new long[this.units];
+    Arrays.fill(set, -1L);
+    int tail = this.size & 63;
+    if (tail != 0)
+      set[this.units - 1] = (1L << tail) - 1;
+
+    long revealed = mask(pattern);
+    for (int i = 0; i < this.length; i++) {
+      char ch = pattern.charAt(i);
+      if (ch != HangmanGame.MYSTERY_LETTER) {
+        //The word must have the revealed letter here.
+        int code = code(ch);
+        long[] bits = code < 0 ? null : this.positions[i * this.alphabetSize + code];
+        if (bits == null) {
+          Arrays.fill(set, 0L);
+          return set;
+        }
+        and(set, bits);
+      }
+      else {
+        //The word must not have any revealed letter here, since it would have been revealed.
+        for (long letters = revealed; letters != 0; letters &= letters - 1) {
+          long[] bits = this.positions[i * this.alphabetSize + Long.numberOfTrailingZeros(letters)];
+          if (bits != null)
+            andNot(set, bits);
+        }
+      }
+    }
+    return set;
+  }
+
+  /**
+   * Remove the words having any of some letters from a bitset of words.
+   * @param letters The codes of the letters as a mask
+   */
+  public void removeLetters(long[] set, long letters) {
+    for (; letters != 0; letters &= letters - 1) {
+      int code = Long.numberOfTrailingZeros(letters);
+      if (code >= this.alphabetSize)
+        continue;
+      for (int i = 0; i < this.length; i++) {
+        long[] bits = this.positions[i * this.alphabetSize + code];
+        if (bits != null)
+          andNot(set, bits);
+      }
+    }
+  }
+
+  /**
+   * @return Ids of the words in a bitset, in ascending order.
+   */
+  public static int[] ids(long[] set) {
+    int count = 0;
+    for (int i = 0; i < set.length; i++)
+      count += Long.bitCount(set[i]);
+
+    int[] ids = new int[count];
+    count = 0;
+    for (int i = 0; i < set.length; i++) {
+      for (long bits = set[i]; bits != 0; bits &= bits - 1) {
+        ids[count++] = (i << 6) + Long.numberOfTrailingZeros(bits);
+      }
+    }
+    return ids;
+  }
+
+  private static void and(long[] set, long[] bits) {
+    for (int i = 0; i < set.length; i++)
+      set[i] &= bits[i];
+  }
+
+  private static void andNot(long[] set, long[] bits) {
+    for (int i = 0; i < set.length; i++)
+      set[i] &= ~bits[i];
+  }
+}
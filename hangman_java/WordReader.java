@@ -0,0 +1,114 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Reads whitespace separated words from a channel and gives them in upper case.
+ * It scans the bytes read into a buffer directly instead of matching regular
+ * expressions like Scanner does. Words are expected in UTF-8, and words of only
+ * ASCII letters, which are the common case, are upper cased without decoding.
+ */
+class WordReader implements Closeable {
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer;
+
+  /**
+   * Bytes of the word being read
+   */
+  private byte[] word = new byte[64];
+
+  public WordReader(ReadableByteChannel channel) {
+    this(channel, 1 << 16);
+  }
+
+  public WordReader(ReadableByteChannel channel, int bufferSize) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+    this.buffer.flip();
+  }
+
+  public WordReader(InputStream in) {
+    this(Channels.newChannel(in));
+  }
+
+  /**
+   * @return A reader of a file, which reads the file through its FileChannel.
+   */
+  public static WordReader open(File file) throws IOException {
+    return new WordReader(new FileInputStream(file).getChannel());
+  }
+
+  /**
+   * Read all the words of a file into a collection.
+   */
+  public static void readWords(File file, Collection<String> words) throws IOException {
+    WordReader reader = open(file);
+    try {
+      String word;
+      while ((word = reader.next()) != null)
+        words.add(word);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @return The next word in upper case, or null if there's no more word.
+   */
+  public String next() throws IOException {
+    //Skip the whitespaces
+    int b;
+    do {
+      b = read();
+      if (b < 0)
+        return null;
+    } while (b <= ' ');
+
+    int size = 0;
+    boolean ascii = true;
+    do {
+      if (size == this.word.length)
+        this.word = Arrays.copyOf(this.word, size * 2);
+      if (b >= 'a' && b <= 'z')
+        b -= 'a' - 'A';
+      else if (b >= 0x80)
+        ascii = false;
+      this.word[size++] = (byte)b;
+      b = read();
+    } while (b > ' ');
+
+    if (ascii)
+      return new String(this.word, 0, size, StandardCharsets.ISO_8859_1);
+    return new String(this.word, 0, size, StandardCharsets.UTF_8).toUpperCase();
+  }
+
+  /**
+   * @return The next byte as an unsigned value, or -1 at the end of the channel.
+   */
+  private int read() throws IOException {
+    if (!this.buffer.hasRemaining()) {
+      this.buffer.clear();
+      int n;
+      do {
+        n = this.channel.read(this.buffer);
+      } while (n == 0);
+      this.buffer.flip();
+      if (n < 0)
+        return -1;
+    }
+    return this.buffer.get() & 0xff;
+  }
+
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
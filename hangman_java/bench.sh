@@ -0,0 +1,4 @@
+#!/usr/bin/env bash
+
+export hangman_dict=../words.txt
+java Bench "$@"
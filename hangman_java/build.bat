@@ -1 +1 @@
-@javac HangmanGame.java Guess.java GuessLetter.java GuessWord.java GuessingStrategy.java MyGuessingStrategy.java Main.java RandomWords.java
+@javac HangmanGame.java Guess.java GuessLetter.java GuessWord.java GuessingStrategy.java GuessResult.java PatternKey.java BoundedCache.java Histogram.java MetricsMBean.java Metrics.java WordIndex.java MyGuessingStrategy.java EntropyGuessingStrategy.java Trace.java Strategies.java OutcomeCache.java LazyIndexes.java IndexFile.java OpeningBook.java WordReader.java Main.java RandomWords.java Bench.java Evaluate.java Server.java Compare.java TraceReplay.java
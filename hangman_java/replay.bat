@@ -0,0 +1,4 @@
+@setlocal
+@set hangman_dict=..\words.txt
+@java TraceReplay %*
+@endlocal